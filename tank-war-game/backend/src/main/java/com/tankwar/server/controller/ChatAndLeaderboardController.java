@@ -113,6 +113,14 @@ public class ChatAndLeaderboardController {
         return chatAndLeaderboardService.getPlayerStats(playerName);
     }
 
+    /**
+     * 获取玩家在各排行榜上的名次
+     */
+    @GetMapping("/player/{playerName}/rank")
+    public Map<String, Object> getPlayerRanks(@PathVariable String playerName) {
+        return chatAndLeaderboardService.getPlayerRanks(playerName);
+    }
+
     /**
      * 获取聊天统计信息
      */
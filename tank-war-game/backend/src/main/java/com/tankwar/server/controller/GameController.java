@@ -1,10 +1,13 @@
 package com.tankwar.server.controller;
 
+import com.tankwar.server.handler.TankWarWebSocketHandler;
 import com.tankwar.server.model.Player;
 import com.tankwar.server.service.GameService;
+import com.tankwar.server.service.PlayerStatsWriter;
 import org.springframework.web.bind.annotation.*;
 
 import java.util.List;
+import java.util.Map;
 
 /**
  * REST API控制器
@@ -15,9 +18,14 @@ import java.util.List;
 public class GameController {
 
     private final GameService gameService;
+    private final TankWarWebSocketHandler webSocketHandler;
+    private final PlayerStatsWriter playerStatsWriter;
 
-    public GameController(GameService gameService) {
+    public GameController(GameService gameService, TankWarWebSocketHandler webSocketHandler,
+                          PlayerStatsWriter playerStatsWriter) {
         this.gameService = gameService;
+        this.webSocketHandler = webSocketHandler;
+        this.playerStatsWriter = playerStatsWriter;
     }
 
     /**
@@ -48,7 +56,26 @@ public class GameController {
      * 获取游戏状态
      */
     @GetMapping("/game/state")
-    public Object getGameState() {
-        return gameService.getGameState();
+    public Object getGameState(@RequestParam(required = false) String roomId) {
+        if (roomId == null) {
+            return gameService.getAllGameStates();
+        }
+        return gameService.getGameState(roomId);
+    }
+
+    /**
+     * 获取各连接的发送队列统计
+     */
+    @GetMapping("/game/connections")
+    public List<Map<String, Object>> getConnections() {
+        return webSocketHandler.getOutboundStats();
+    }
+
+    /**
+     * 获取分数写入器的队列与批量写入统计
+     */
+    @GetMapping("/game/stats-writer")
+    public Map<String, Object> getStatsWriter() {
+        return playerStatsWriter.getStats();
     }
 }
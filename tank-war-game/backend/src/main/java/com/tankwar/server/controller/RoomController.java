@@ -141,4 +141,12 @@ public class RoomController {
             "playingRooms", roomService.getPlayingRooms().size()
         );
     }
+
+    /**
+     * 获取模拟统计（线程池利用率，各房间tick数、耗时、超时、跳帧等）
+     */
+    @GetMapping("/simulation-stats")
+    public Map<String, Object> getSimulationStats() {
+        return roomService.getSimulationStats();
+    }
 }
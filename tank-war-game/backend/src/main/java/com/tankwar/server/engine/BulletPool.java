@@ -0,0 +1,137 @@
+package com.tankwar.server.engine;
+
+import java.util.Arrays;
+
+/**
+ * 子弹对象池（结构体数组布局）
+ *
+ * 子弹数据按字段存放在并行的基本类型数组中，空闲槽位通过空闲链表复用，
+ * 发射、移动和回收都不产生对象分配。只有发布快照时才复制为不可变的 WorldSnapshot.BulletView。
+ * 非线程安全，只能由持有所属引擎的线程访问。
+ */
+public class BulletPool {
+
+    private static final int NO_SLOT = -1;
+
+    private double[] x;
+    private double[] y;
+    private double[] vx;
+    private double[] vy;
+    private int[] owner;
+    private int[] damage;
+    private int[] serial;
+    private boolean[] alive;
+    private int[] nextFree;
+
+    private int freeHead = NO_SLOT;
+    private int highWater;
+    private int size;
+    private int serialCounter;
+
+    public BulletPool(int initialCapacity) {
+        int capacity = Math.max(initialCapacity, 16);
+        x = new double[capacity];
+        y = new double[capacity];
+        vx = new double[capacity];
+        vy = new double[capacity];
+        owner = new int[capacity];
+        damage = new int[capacity];
+        serial = new int[capacity];
+        alive = new boolean[capacity];
+        nextFree = new int[capacity];
+    }
+
+    /**
+     * 分配一颗子弹，返回槽位下标
+     */
+    public int spawn(int ownerSlot, double x, double y, double vx, double vy, int damage) {
+        int slot;
+        if (freeHead != NO_SLOT) {
+            slot = freeHead;
+            freeHead = nextFree[slot];
+        } else {
+            if (highWater == alive.length) {
+                grow();
+            }
+            slot = highWater++;
+        }
+        this.x[slot] = x;
+        this.y[slot] = y;
+        this.vx[slot] = vx;
+        this.vy[slot] = vy;
+        this.owner[slot] = ownerSlot;
+        this.damage[slot] = damage;
+        this.serial[slot] = ++serialCounter;
+        this.alive[slot] = true;
+        size++;
+        return slot;
+    }
+
+    /**
+     * 回收子弹槽位
+     */
+    public void release(int slot) {
+        if (!alive[slot]) {
+            return;
+        }
+        alive[slot] = false;
+        nextFree[slot] = freeHead;
+        freeHead = slot;
+        size--;
+    }
+
+    /**
+     * 所有存活子弹按速度前进一步
+     */
+    public void advance() {
+        for (int i = 0; i < highWater; i++) {
+            if (alive[i]) {
+                x[i] += vx[i];
+                y[i] += vy[i];
+            }
+        }
+    }
+
+    public void clear() {
+        Arrays.fill(alive, 0, highWater, false);
+        freeHead = NO_SLOT;
+        highWater = 0;
+        size = 0;
+    }
+
+    private void grow() {
+        int capacity = alive.length * 2;
+        x = Arrays.copyOf(x, capacity);
+        y = Arrays.copyOf(y, capacity);
+        vx = Arrays.copyOf(vx, capacity);
+        vy = Arrays.copyOf(vy, capacity);
+        owner = Arrays.copyOf(owner, capacity);
+        damage = Arrays.copyOf(damage, capacity);
+        serial = Arrays.copyOf(serial, capacity);
+        alive = Arrays.copyOf(alive, capacity);
+        nextFree = Arrays.copyOf(nextFree, capacity);
+    }
+
+    /**
+     * 遍历上界，槽位 [0, highWater) 中可能存在存活子弹
+     */
+    public int highWater() { return highWater; }
+
+    public int size() { return size; }
+
+    public boolean isAlive(int slot) { return alive[slot]; }
+
+    public double x(int slot) { return x[slot]; }
+
+    public double y(int slot) { return y[slot]; }
+
+    public double vx(int slot) { return vx[slot]; }
+
+    public double vy(int slot) { return vy[slot]; }
+
+    public int owner(int slot) { return owner[slot]; }
+
+    public int damage(int slot) { return damage[slot]; }
+
+    public int serial(int slot) { return serial[slot]; }
+}
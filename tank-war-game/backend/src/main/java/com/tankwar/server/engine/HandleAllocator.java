@@ -0,0 +1,50 @@
+package com.tankwar.server.engine;
+
+import java.util.BitSet;
+
+/**
+ * 房间内实体句柄分配器
+ *
+ * 对局内的实体（玩家、道具）只需在房间内唯一，用从0开始的小整数代替全局UUID：
+ * 分配不依赖 SecureRandom，比较和哈希是整数运算，编码为varint通常只占1字节。
+ * 释放的句柄会被复用，总是分配当前最小的空闲值，句柄可直接作为数组下标。
+ * 只由房间的模拟线程调用，不是线程安全的。
+ */
+public final class HandleAllocator {
+
+    private final BitSet used = new BitSet();
+
+    /**
+     * 分配最小的空闲句柄
+     */
+    public int allocate() {
+        int handle = used.nextClearBit(0);
+        used.set(handle);
+        return handle;
+    }
+
+    /**
+     * 占用指定句柄，已被占用时返回 false
+     */
+    public boolean claim(int handle) {
+        if (handle < 0 || used.get(handle)) {
+            return false;
+        }
+        used.set(handle);
+        return true;
+    }
+
+    public void release(int handle) {
+        if (handle >= 0) {
+            used.clear(handle);
+        }
+    }
+
+    public void clear() {
+        used.clear();
+    }
+
+    public int size() {
+        return used.cardinality();
+    }
+}
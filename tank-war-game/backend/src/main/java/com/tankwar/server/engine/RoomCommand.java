@@ -0,0 +1,126 @@
+package com.tankwar.server.engine;
+
+import com.tankwar.server.model.Player;
+
+/**
+ * 房间输入命令
+ *
+ * WebSocket处理线程只负责把命令放入房间的无锁队列，由模拟线程在每帧开始时统一执行，
+ * 保证游戏状态只有一个写线程。
+ */
+public abstract class RoomCommand {
+
+    abstract void apply(RoomEngine engine);
+
+    /**
+     * 玩家加入后放置到出生点
+     */
+    public static final class Spawn extends RoomCommand {
+        private final Player player;
+
+        public Spawn(Player player) {
+            this.player = player;
+        }
+
+        @Override
+        void apply(RoomEngine engine) {
+            engine.applySpawn(player);
+        }
+    }
+
+    /**
+     * 玩家离开后清理其在引擎中的数据
+     */
+    public static final class Despawn extends RoomCommand {
+        private final Player player;
+
+        public Despawn(Player player) {
+            this.player = player;
+        }
+
+        @Override
+        void apply(RoomEngine engine) {
+            engine.applyDespawn(player);
+        }
+    }
+
+    /**
+     * 移动
+     */
+    public static final class Move extends RoomCommand {
+        private final String playerId;
+        private final double x;
+        private final double y;
+        private final int direction;
+
+        public Move(String playerId, double x, double y, int direction) {
+            this.playerId = playerId;
+            this.x = x;
+            this.y = y;
+            this.direction = direction;
+        }
+
+        @Override
+        void apply(RoomEngine engine) {
+            engine.applyMove(playerId, x, y, direction);
+        }
+    }
+
+    /**
+     * 按键输入，seq 递增，keys 为方向位掩码
+     */
+    public static final class Input extends RoomCommand {
+        private final String playerId;
+        private final int sequence;
+        private final int keys;
+
+        public Input(String playerId, int sequence, int keys) {
+            this.playerId = playerId;
+            this.sequence = sequence;
+            this.keys = keys;
+        }
+
+        @Override
+        void apply(RoomEngine engine) {
+            engine.applyInput(playerId, sequence, keys);
+        }
+    }
+
+    /**
+     * 射击
+     */
+    public static final class Shoot extends RoomCommand {
+        private final String playerId;
+        private final double x;
+        private final double y;
+        private final int direction;
+
+        public Shoot(String playerId, double x, double y, int direction) {
+            this.playerId = playerId;
+            this.x = x;
+            this.y = y;
+            this.direction = direction;
+        }
+
+        @Override
+        void apply(RoomEngine engine) {
+            engine.applyShoot(playerId, x, y, direction);
+        }
+    }
+
+    /**
+     * 复活
+     */
+    public static final class Respawn extends RoomCommand {
+        private final String playerId;
+
+        public Respawn(String playerId) {
+            this.playerId = playerId;
+        }
+
+        @Override
+        void apply(RoomEngine engine) {
+            engine.applyRespawn(playerId);
+        }
+    }
+}
@@ -0,0 +1,871 @@
+package com.tankwar.server.engine;
+
+import com.tankwar.server.model.*;
+import com.tankwar.server.service.MapAndPowerUpService;
+
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.IdentityHashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Queue;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.function.Consumer;
+import java.util.stream.Collectors;
+
+/**
+ * 房间模拟引擎
+ *
+ * 每个房间拥有独立的世界（玩家、子弹、障碍物、道具），由房间tick执行器在线程池上驱动tick，
+ * 房间之间互不共享状态。
+ * 外部线程只通过无锁命令队列提交输入，世界状态只由模拟线程修改；碰撞检测使用空间网格粗筛。
+ */
+public class RoomEngine {
+
+    // 网格单元大小：坦克20px，迷宫砖块40px
+    private static final double CELL_SIZE = 40;
+
+    private static final double BULLET_SPEED = 8.0;
+    private static final int BULLET_DAMAGE = 25;
+    private static final double BULLET_SIZE = 3;
+    // 坦克边长的一半和炮管长度，输入驱动的玩家由服务端按此计算炮口位置，与客户端绘制一致
+    private static final double TANK_HALF_SIZE = 10;
+    private static final double BARREL_LENGTH = 10;
+    // 每帧最多执行的命令数，避免输入洪泛时单帧无限延长
+    private static final int MAX_COMMANDS_PER_TICK = 4096;
+    // 方向 0:上, 1:右, 2:下, 3:左 对应的单位速度
+    private static final int[] DIRECTION_X = {0, 1, 0, -1};
+    private static final int[] DIRECTION_Y = {-1, 0, 1, 0};
+    // 输入位掩码：第n位表示按下方向n；Player.speed 按客户端每秒60帧的位移定义
+    public static final int INPUT_MASK = 0x0F;
+    private static final double INPUT_FRAME_RATE = 60.0;
+    // 按键处理顺序：上、下、左、右
+    private static final int[] INPUT_ORDER = {0, 2, 3, 1};
+
+    private final GameRoom room;
+    private final int tickRate;
+    // 降级等级：超出CPU预算时由执行器提高，非关键工作（道具过期检查）每 2^level 帧执行一次
+    private int throttleLevel;
+    // 每个tick相当于客户端的帧数，用于把 Player.speed 换算为每tick位移
+    private final double framesPerTick;
+    private final long gameStartTime = System.currentTimeMillis();
+    private final SpatialGrid<Obstacle> obstacleGrid;
+    private final SpatialGrid<PowerUp> powerUpGrid;
+    private final SpatialGrid<Player> playerGrid;
+    private final BulletPool bullets = new BulletPool(64);
+    private final Queue<RoomCommand> commands = new ConcurrentLinkedQueue<>();
+    // 本帧没有空闲出生点而推迟的出生/复活命令，下一帧重试
+    private final List<RoomCommand> deferredCommands = new ArrayList<>();
+    private volatile Consumer<TankWarMessage> eventListener = message -> {};
+    // 提交命令时回调，空闲降频的房间据此立即恢复
+    private volatile Runnable wakeListener = () -> {};
+    // 最近一次有活动（命令、按住的按键、飞行中的子弹）的帧
+    private long lastActivityTick;
+    // 本帧累积的事件，帧末合并为一条 events 消息发出；同一玩家本帧内的多次移动只保留最后一次
+    private final List<TankWarMessage> pendingEvents = new ArrayList<>();
+    private final Map<Player, TankWarMessage> pendingMoves = new IdentityHashMap<>();
+    // 输入驱动的玩家：当前按键状态和最近处理的输入序号
+    private final Map<Player, InputState> inputs = new IdentityHashMap<>();
+
+    // 快照：每帧结束时整体替换发布，未变化的障碍物和道具视图跨帧复用
+    private volatile WorldSnapshot snapshot;
+    private long tickCount;
+    private int rosterVersion;
+    private int powerUpsVersion;
+
+    // 静态地图层：生成地图时的障碍物几何，之后只通过受损/摧毁事件同步变化；
+    // 受损和摧毁情况随层一起由模拟线程整体替换发布，其他线程只读取已发布的层
+    private volatile MapLayer mapLayer;
+    private int mapVersion;
+    // 视线遮挡表：只在生成地图和障碍物被摧毁时重建，其余帧的快照共用同一张表及其缓存
+    private VisibilityMap visibilityMap;
+    private boolean visibilityDirty = true;
+    // 出生点候选表：随地图生成建立，随砖墙摧毁和坦克移动增量更新
+    private SpawnMap spawnMap;
+    private final Map<Obstacle, Integer> obstacleIds = new IdentityHashMap<>();
+    private boolean obstaclesDirty = true;
+    private boolean powerUpsDirty = true;
+    private List<WorldSnapshot.ObstacleView> obstacleViews = List.of();
+    private List<WorldSnapshot.PowerUpView> powerUpViews = List.of();
+    // 房间内实体句柄：玩家和道具使用可复用的小整数，碰撞和归属判断只比较整数；子弹以发射者句柄记录归属
+    private final HandleAllocator playerHandles = new HandleAllocator();
+    private final HandleAllocator powerUpHandles = new HandleAllocator();
+    private Player[] handlePlayers = new Player[16];
+
+    // 碰撞回调复用的状态，避免每颗子弹创建闭包
+    private int currentBullet;
+    private Player currentPlayer;
+    private final Consumer<Player> bulletPlayerCheck = this::checkBulletPlayer;
+    private final Consumer<Obstacle> bulletObstacleCheck = this::checkBulletObstacle;
+    private final Consumer<PowerUp> playerPowerUpCheck = this::checkPlayerPowerUp;
+
+    public RoomEngine(GameRoom room, int tickRate) {
+        this.room = room;
+        this.tickRate = tickRate;
+        this.framesPerTick = INPUT_FRAME_RATE / tickRate;
+        this.obstacleGrid = new SpatialGrid<>(CELL_SIZE, room.getMapWidth(), room.getMapHeight());
+        this.powerUpGrid = new SpatialGrid<>(CELL_SIZE, room.getMapWidth(), room.getMapHeight());
+        this.playerGrid = new SpatialGrid<>(CELL_SIZE, room.getMapWidth(), room.getMapHeight());
+        // 房间创建时即生成地图，玩家加入后可立即开始对战
+        if (room.getObstacles().isEmpty()) {
+            room.generateMap();
+        }
+        rebuildObstacleLayer();
+        rebuildPowerUpGrid();
+        publishSnapshot();
+    }
+
+    /**
+     * 提交命令，可由任意线程调用，立即返回
+     */
+    public void submit(RoomCommand command) {
+        commands.offer(command);
+        wakeListener.run();
+    }
+
+    /**
+     * 是否有尚未执行的命令，可由任意线程调用
+     */
+    public boolean hasPendingCommands() {
+        return !commands.isEmpty();
+    }
+
+    /**
+     * 设置唤醒回调，每次提交命令后在提交线程上调用
+     */
+    public void setWakeListener(Runnable wakeListener) {
+        this.wakeListener = wakeListener;
+    }
+
+    /**
+     * 设置房间事件回调，每帧最多调用一次，消息类型为 events，data 为本帧事件列表；在模拟线程上调用
+     */
+    public void setEventListener(Consumer<TankWarMessage> eventListener) {
+        this.eventListener = eventListener;
+    }
+
+    /**
+     * 推进一帧模拟
+     */
+    public void tick() {
+        drainCommands();
+        integrateInputs();
+        syncGrids();
+        updateBullets();
+        if (bullets.size() > 0) {
+            lastActivityTick = tickCount;
+        }
+        if ((tickCount & ((1L << throttleLevel) - 1)) == 0) {
+            updatePowerUps();
+        }
+        checkCollisions();
+        removeInactiveObjects();
+        tickCount++;
+        // 先发布快照，事件监听器按本帧快照判断各会话能否看到事件来源
+        publishSnapshot();
+        flushEvents();
+    }
+
+    private void emit(TankWarMessage event) {
+        pendingEvents.add(event);
+    }
+
+    private void flushEvents() {
+        if (pendingEvents.isEmpty()) {
+            return;
+        }
+        List<TankWarMessage> events = new ArrayList<>(pendingEvents);
+        pendingEvents.clear();
+        pendingMoves.clear();
+        eventListener.accept(new TankWarMessage("events", events));
+    }
+
+    private void drainCommands() {
+        RoomCommand command;
+        int processed = 0;
+        while (processed < MAX_COMMANDS_PER_TICK && (command = commands.poll()) != null) {
+            processed++;
+            try {
+                command.apply(this);
+            } catch (Exception e) {
+                System.err.println("执行房间命令失败: " + e.getMessage());
+            }
+        }
+        if (processed > 0) {
+            lastActivityTick = tickCount;
+        }
+        if (!deferredCommands.isEmpty()) {
+            commands.addAll(deferredCommands);
+            deferredCommands.clear();
+        }
+    }
+
+    /**
+     * 玩家加入房间，出生点在下一帧由模拟线程放置
+     */
+    public boolean addPlayer(Player player) {
+        if (!room.addPlayer(player)) {
+            return false;
+        }
+        submit(new RoomCommand.Spawn(player));
+        return true;
+    }
+
+    /**
+     * 将玩家移出房间，引擎内的数据在下一帧清理
+     */
+    public Player removePlayer(String playerId) {
+        Player player = room.removePlayer(playerId);
+        if (player != null) {
+            submit(new RoomCommand.Despawn(player));
+        }
+        return player;
+    }
+
+    public Player getPlayer(String playerId) {
+        return room.getPlayers().get(playerId);
+    }
+
+    void applySpawn(Player player) {
+        if (!room.getPlayers().containsKey(player.getId())) {
+            return;
+        }
+        double[] spawn = findSpawnPosition();
+        if (spawn == null) {
+            deferredCommands.add(new RoomCommand.Spawn(player));
+            return;
+        }
+        player.setX(spawn[0]);
+        player.setY(spawn[1]);
+        playerGrid.insert(player, spawn[0], spawn[1], 20, 20);
+        spawnMap.addTank(spawn[0], spawn[1]);
+        assignHandle(player);
+        rosterVersion++;
+    }
+
+    void applyDespawn(Player player) {
+        if (playerGrid.contains(player)) {
+            rosterVersion++;
+            spawnMap.removeTank(player.getX(), player.getY());
+        }
+        playerGrid.remove(player);
+        releaseHandle(player);
+        inputs.remove(player);
+    }
+
+    void applyMove(String playerId, double x, double y, int direction) {
+        Player player = room.getPlayers().get(playerId);
+        // 输入驱动的玩家位置只由服务端积分，不接受客户端上报的坐标
+        if (player != null && player.isAlive() && playerGrid.contains(player) && !inputs.containsKey(player)) {
+            // 检查边界
+            x = Math.max(20, Math.min(room.getMapWidth() - 20, x));
+            y = Math.max(20, Math.min(room.getMapHeight() - 20, y));
+
+            // 检查碰撞
+            if (!isCollision(x, y, player.getHandle())) {
+                spawnMap.moveTank(player.getX(), player.getY(), x, y);
+                player.updatePosition(x, y, direction);
+                playerGrid.update(player, x, y, 20, 20);
+                emitPosition(player);
+            }
+        }
+    }
+
+    private void emitPosition(Player player) {
+        Map<String, Object> position = new HashMap<>();
+        position.put("x", player.getX());
+        position.put("y", player.getY());
+        position.put("direction", player.getDirection());
+        TankWarMessage update = pendingMoves.get(player);
+        if (update != null) {
+            update.setData(position);
+            return;
+        }
+        update = new TankWarMessage("positionUpdate", position);
+        update.setPlayerId(player.getId());
+        pendingMoves.put(player, update);
+        emit(update);
+    }
+
+    /**
+     * 记录玩家的按键状态，乱序到达的旧输入直接丢弃
+     */
+    void applyInput(String playerId, int sequence, int keys) {
+        Player player = room.getPlayers().get(playerId);
+        if (player == null || !playerGrid.contains(player)) {
+            return;
+        }
+        InputState state = inputs.computeIfAbsent(player, key -> new InputState());
+        if (sequence <= state.sequence) {
+            return;
+        }
+        state.sequence = sequence;
+        state.keys = keys & INPUT_MASK;
+    }
+
+    /**
+     * 按当前按键状态推进输入驱动玩家的位置，规则与客户端本地预测一致：
+     * 上、下、左、右依次处理，同轴相反方向以后者为准，最后处理的按键决定朝向；受阻时本帧不移动
+     */
+    private void integrateInputs() {
+        if (inputs.isEmpty()) {
+            return;
+        }
+        int mapWidth = room.getMapWidth();
+        int mapHeight = room.getMapHeight();
+        for (Map.Entry<Player, InputState> entry : inputs.entrySet()) {
+            int keys = entry.getValue().keys;
+            if (keys == 0) continue;
+            lastActivityTick = tickCount;
+            Player player = entry.getKey();
+            if (!player.isAlive() || !playerGrid.contains(player)) continue;
+
+            double step = player.getSpeed() * framesPerTick;
+            double x = player.getX();
+            double y = player.getY();
+            int direction = player.getDirection();
+            for (int d : INPUT_ORDER) {
+                if ((keys & (1 << d)) != 0) {
+                    if (DIRECTION_X[d] != 0) {
+                        x = player.getX() + DIRECTION_X[d] * step;
+                    } else {
+                        y = player.getY() + DIRECTION_Y[d] * step;
+                    }
+                    direction = d;
+                }
+            }
+            x = Math.max(20, Math.min(mapWidth - 20, x));
+            y = Math.max(20, Math.min(mapHeight - 20, y));
+            if (!isCollision(x, y, player.getHandle())) {
+                spawnMap.moveTank(player.getX(), player.getY(), x, y);
+                player.updatePosition(x, y, direction);
+                playerGrid.update(player, x, y, 20, 20);
+            }
+        }
+    }
+
+    void applyShoot(String playerId, double x, double y, int direction) {
+        Player player = room.getPlayers().get(playerId);
+        if (player == null || !player.isAlive() || !playerGrid.contains(player)) {
+            return;
+        }
+
+        double vx = 0;
+        double vy = 0;
+        if (direction >= 0 && direction < DIRECTION_X.length) {
+            vx = DIRECTION_X[direction] * BULLET_SPEED;
+            vy = DIRECTION_Y[direction] * BULLET_SPEED;
+            // 位置由服务端积分的玩家不采信客户端坐标，从服务端坦克位置的炮口发射
+            if (inputs.containsKey(player)) {
+                x = player.getX() + TANK_HALF_SIZE + DIRECTION_X[direction] * BARREL_LENGTH;
+                y = player.getY() + TANK_HALF_SIZE + DIRECTION_Y[direction] * BARREL_LENGTH;
+            }
+        }
+        int slot = bullets.spawn(player.getHandle(), x, y, vx, vy, BULLET_DAMAGE);
+
+        // 子弹创建随本帧事件一起广播：子弹匀速直线运动，快照tick t 时的位置为 (x, y) + (vx, vy) * (t - tick)
+        Map<String, Object> spawn = new LinkedHashMap<>();
+        spawn.put("id", String.valueOf(bullets.serial(slot)));
+        spawn.put("playerId", playerId);
+        spawn.put("x", x);
+        spawn.put("y", y);
+        spawn.put("vx", vx);
+        spawn.put("vy", vy);
+        spawn.put("damage", BULLET_DAMAGE);
+        spawn.put("tick", tickCount);
+        emit(new TankWarMessage("bulletCreated", spawn));
+    }
+
+    /**
+     * 子弹命中或随发射者离开而提前消失时通知客户端；飞出地图由客户端自行判断，不发送事件
+     */
+    private void releaseBullet(int slot) {
+        emit(new TankWarMessage("bulletRemoved", Map.of("id", String.valueOf(bullets.serial(slot)))));
+        bullets.release(slot);
+    }
+
+    /**
+     * 复活玩家
+     */
+    void applyRespawn(String playerId) {
+        Player player = room.getPlayers().get(playerId);
+        // 只有已阵亡的玩家可以复活，存活的坦克不能借此传送和回满生命值
+        if (player == null || player.isAlive() || !playerGrid.contains(player)) {
+            return;
+        }
+
+        double[] spawn = findSpawnPosition();
+        if (spawn == null) {
+            deferredCommands.add(new RoomCommand.Respawn(playerId));
+            return;
+        }
+
+        // 保存当前分数
+        int currentScore = player.getScore();
+        int currentKills = player.getKills();
+        int currentDeaths = player.getDeaths();
+
+        // 调用玩家的respawn方法
+        spawnMap.moveTank(player.getX(), player.getY(), spawn[0], spawn[1]);
+        player.respawn(spawn[0], spawn[1]);
+        playerGrid.update(player, spawn[0], spawn[1], 20, 20);
+
+        // 恢复分数和统计数据
+        player.setScore(currentScore);
+        player.setKills(currentKills);
+        player.setDeaths(currentDeaths);
+    }
+
+    private void updateBullets() {
+        int mapWidth = room.getMapWidth();
+        int mapHeight = room.getMapHeight();
+        bullets.advance();
+        for (int i = 0, n = bullets.highWater(); i < n; i++) {
+            if (!bullets.isAlive(i)) continue;
+
+            // 检查边界
+            double bx = bullets.x(i);
+            double by = bullets.y(i);
+            if (bx < 0 || bx > mapWidth || by < 0 || by > mapHeight) {
+                bullets.release(i);
+            }
+        }
+    }
+
+    private void updatePowerUps() {
+        room.getPowerUps().forEach(powerUp -> {
+            if (powerUp.isActive() && powerUp.isExpired()) {
+                powerUp.setActive(false);
+                powerUpsDirty = true;
+            }
+        });
+    }
+
+    private void checkCollisions() {
+        // 子弹与玩家碰撞
+        for (int i = 0, n = bullets.highWater(); i < n; i++) {
+            if (!bullets.isAlive(i)) continue;
+            currentBullet = i;
+            playerGrid.query(bullets.x(i), bullets.y(i), BULLET_SIZE, BULLET_SIZE, bulletPlayerCheck);
+        }
+
+        // 子弹与障碍物碰撞
+        for (int i = 0, n = bullets.highWater(); i < n; i++) {
+            if (!bullets.isAlive(i)) continue;
+            currentBullet = i;
+            obstacleGrid.query(bullets.x(i), bullets.y(i), BULLET_SIZE, BULLET_SIZE, bulletObstacleCheck);
+        }
+
+        // 玩家与道具碰撞
+        for (Player player : room.getPlayers().values()) {
+            if (!player.isAlive() || !playerGrid.contains(player)) continue;
+            currentPlayer = player;
+            powerUpGrid.query(player.getX(), player.getY(), 20, 20, playerPowerUpCheck);
+        }
+        currentPlayer = null;
+    }
+
+    private void checkBulletPlayer(Player player) {
+        int bullet = currentBullet;
+        if (!bullets.isAlive(bullet) || !player.isAlive()) return;
+        if (player.getHandle() == bullets.owner(bullet)) return;
+
+        if (isColliding(bullets.x(bullet), bullets.y(bullet), BULLET_SIZE, player.getX(), player.getY(), 20, 20)) {
+            player.takeDamage(bullets.damage(bullet));
+            releaseBullet(bullet);
+
+            // 击杀统计
+            Player shooter = handlePlayers[bullets.owner(bullet)];
+            if (shooter != null && !player.isAlive()) {
+                shooter.addKill();
+            }
+        }
+    }
+
+    private void checkBulletObstacle(Obstacle obstacle) {
+        int bullet = currentBullet;
+        // 一颗子弹同时命中多个障碍物时每个都受到伤害
+        if (isColliding(bullets.x(bullet), bullets.y(bullet), BULLET_SIZE,
+                      obstacle.getX(), obstacle.getY(), obstacle.getWidth(), obstacle.getHeight())) {
+            if (obstacle.isDestructible() && !obstacle.isDestroyed()) {
+                obstacle.takeDamage(bullets.damage(bullet));
+                obstaclesDirty = true;
+                emitObstacleChange(obstacle);
+            }
+            if (bullets.isAlive(bullet)) {
+                releaseBullet(bullet);
+            }
+        }
+    }
+
+    private void checkPlayerPowerUp(PowerUp powerUp) {
+        Player player = currentPlayer;
+        if (!powerUp.isActive() || !player.isAlive()) return;
+        if (isColliding(player.getX(), player.getY(), 20, powerUp.getX(), powerUp.getY(),
+                      powerUp.getRadius() * 2, powerUp.getRadius() * 2)) {
+            applyPowerUp(player, powerUp);
+            powerUp.setActive(false);
+            powerUpsDirty = true;
+        }
+    }
+
+    private void applyPowerUp(Player player, PowerUp powerUp) {
+        switch (powerUp.getType()) {
+            case "speed":
+                player.setSpeed(Math.min(player.getSpeed() + 1, 6));
+                break;
+            case "damage":
+                player.setPowerUpLevel(player.getPowerUpLevel() + 1);
+                player.setPowerUpType("damage");
+                break;
+            case "health":
+                player.heal(50);
+                break;
+            case "shield":
+                player.setPowerUpLevel(player.getPowerUpLevel() + 1);
+                player.setPowerUpType("shield");
+                break;
+        }
+        player.addScore(10);
+    }
+
+    private void removeInactiveObjects() {
+        if (powerUpsDirty) {
+            room.getPowerUps().removeIf(powerUp -> {
+                if (powerUp.isActive()) return false;
+                powerUpGrid.remove(powerUp);
+                powerUpHandles.release(powerUp.getId());
+                return true;
+            });
+        }
+        if (obstaclesDirty) {
+            room.getObstacles().removeIf(obstacle -> {
+                if (!obstacle.isDestroyed()) return false;
+                obstacleGrid.remove(obstacle);
+                spawnMap.removeObstacle(obstacle);
+                return true;
+            });
+        }
+    }
+
+    /**
+     * 障碍物和道具列表可能被引擎以外修改（如开局生成地图、生成新道具）：地图版本变化时重建静态层，道具数量不一致时重建网格
+     */
+    private void syncGrids() {
+        if (mapLayer.roomMapVersion != room.getMapVersion()) {
+            rebuildObstacleLayer();
+            rebuildPowerUpGrid();
+            // 地图重新生成后整体下发新的静态层
+            emit(new TankWarMessage("mapData", describeMap(true)));
+        } else if (powerUpGrid.size() != room.getPowerUps().size()) {
+            rebuildPowerUpGrid();
+        }
+    }
+
+    /**
+     * 障碍物只在生成地图时整体建立网格和静态层，之后增量删除
+     */
+    private void rebuildObstacleLayer() {
+        int roomMapVersion = room.getMapVersion();
+        obstaclesDirty = true;
+        visibilityDirty = true;
+        obstacleGrid.clear();
+        obstacleIds.clear();
+        List<Obstacle> live = new ArrayList<>(room.getObstacles());
+        List<Obstacle> geometry = new ArrayList<>(live.size());
+        Map<Integer, Integer> damaged = new LinkedHashMap<>();
+        List<Integer> destroyed = new ArrayList<>();
+        for (int i = 0; i < live.size(); i++) {
+            Obstacle obstacle = live.get(i);
+            obstacleGrid.insert(obstacle, obstacle.getX(), obstacle.getY(), obstacle.getWidth(), obstacle.getHeight());
+            obstacleIds.put(obstacle, i);
+            // 静态层保存生成时的副本，不随后续伤害变化
+            Obstacle original = new Obstacle(obstacle.getX(), obstacle.getY(), obstacle.getWidth(), obstacle.getHeight(),
+                    obstacle.getType());
+            geometry.add(original);
+            if (obstacle.isDestroyed()) {
+                destroyed.add(i);
+            } else if (obstacle.getHealth() != original.getHealth()) {
+                damaged.put(i, obstacle.getHealth());
+            }
+        }
+        // 出生点候选表按新地图整体重建，已在场的坦克重新登记
+        spawnMap = new SpawnMap(room.getMapWidth(), room.getMapHeight(), live);
+        for (Player player : room.getPlayers().values()) {
+            if (playerGrid.contains(player)) {
+                spawnMap.addTank(player.getX(), player.getY());
+            }
+        }
+        MapAndPowerUpService.MapData map = new MapAndPowerUpService.MapData(
+                Collections.unmodifiableList(geometry), List.of(), List.of());
+        mapLayer = new MapLayer(room.getId() + "-" + (++mapVersion), roomMapVersion, map, damaged, destroyed);
+    }
+
+    /**
+     * 道具列表被外部修改后重建网格；已有句柄的道具保留原句柄，新道具分配空闲句柄
+     */
+    private void rebuildPowerUpGrid() {
+        powerUpsDirty = true;
+        powerUpGrid.clear();
+        powerUpHandles.clear();
+        List<PowerUp> unassigned = new ArrayList<>();
+        for (PowerUp powerUp : room.getPowerUps()) {
+            powerUpGrid.insert(powerUp, powerUp.getX(), powerUp.getY(), powerUp.getRadius() * 2, powerUp.getRadius() * 2);
+            if (!powerUpHandles.claim(powerUp.getId())) {
+                unassigned.add(powerUp);
+            }
+        }
+        for (PowerUp powerUp : unassigned) {
+            powerUp.setId(powerUpHandles.allocate());
+        }
+    }
+
+    private void emitObstacleChange(Obstacle obstacle) {
+        Integer id = obstacleIds.get(obstacle);
+        if (id == null) {
+            return;
+        }
+        if (obstacle.isDestroyed()) {
+            // 只有摧毁会改变遮挡，受损不影响视线
+            visibilityDirty = true;
+            mapLayer = mapLayer.withDestroyed(id);
+            emit(new TankWarMessage("obstacleDestroyed", Map.of("id", id)));
+        } else {
+            mapLayer = mapLayer.withDamage(id, obstacle.getHealth());
+            emit(new TankWarMessage("obstacleDamaged", Map.of("id", id, "health", obstacle.getHealth())));
+        }
+    }
+
+    /**
+     * 描述当前地图：静态层ID、可选的几何数据，以及相对生成时的受损和摧毁情况。
+     * 只读取模拟线程已发布的地图层，不访问障碍物对象，因此可由任意线程调用
+     */
+    public Map<String, Object> describeMap(boolean includeGeometry) {
+        MapLayer layer = mapLayer;
+        Map<String, Object> description = new LinkedHashMap<>();
+        description.put("mapId", layer.mapId);
+        description.put("mapWidth", room.getMapWidth());
+        description.put("mapHeight", room.getMapHeight());
+        // 客户端按tick频率外推子弹位置
+        description.put("tickRate", tickRate);
+        if (includeGeometry) {
+            description.put("map", layer.map);
+        }
+        description.put("damaged", layer.damaged);
+        description.put("destroyed", layer.destroyed);
+        return description;
+    }
+
+    public String getMapId() {
+        return mapLayer.mapId;
+    }
+
+    /**
+     * 从出生点候选表中随机选取空闲位置；地图被完全占满时返回 null，由调用方推迟到下一帧重试
+     */
+    private double[] findSpawnPosition() {
+        return spawnMap.pick();
+    }
+
+    /**
+     * 检查给定位置是否与障碍物碰撞
+     */
+    private boolean isPositionCollidingWithObstacles(double x, double y) {
+        return obstacleGrid.anyMatch(x, y, 20, 20,
+                obstacle -> isColliding(x, y, 20, obstacle.getX(), obstacle.getY(),
+                                        obstacle.getWidth(), obstacle.getHeight()));
+    }
+
+    private boolean isCollision(double x, double y, int playerHandle) {
+        // 检查与障碍物碰撞
+        if (isPositionCollidingWithObstacles(x, y)) return true;
+
+        // 检查与其他玩家碰撞
+        return playerGrid.anyMatch(x, y, 20, 20,
+                player -> player.getHandle() != playerHandle
+                        && isColliding(x, y, 20, player.getX(), player.getY(), 20, 20));
+    }
+
+    /**
+     * 为出生的玩家分配房间内句柄，已有句柄时保持不变
+     */
+    private void assignHandle(Player player) {
+        if (player.getHandle() >= 0) {
+            return;
+        }
+        int handle = playerHandles.allocate();
+        if (handle >= handlePlayers.length) {
+            handlePlayers = Arrays.copyOf(handlePlayers, Math.max(handle + 1, handlePlayers.length * 2));
+        }
+        handlePlayers[handle] = player;
+        player.setHandle(handle);
+    }
+
+    /**
+     * 释放玩家句柄，同时回收其在飞行中的子弹，避免句柄复用后击杀记到新玩家头上
+     */
+    private void releaseHandle(Player player) {
+        int handle = player.getHandle();
+        if (handle < 0) {
+            return;
+        }
+        player.setHandle(-1);
+        playerHandles.release(handle);
+        handlePlayers[handle] = null;
+        for (int i = 0, n = bullets.highWater(); i < n; i++) {
+            if (bullets.isAlive(i) && bullets.owner(i) == handle) {
+                releaseBullet(i);
+            }
+        }
+    }
+
+    /**
+     * 生成子弹的JSON视图，只在序列化边界使用
+     */
+    private WorldSnapshot.BulletView toBulletView(int slot) {
+        int owner = bullets.owner(slot);
+        return new WorldSnapshot.BulletView(bullets.serial(slot), owner, handlePlayers[owner].getId(),
+                bullets.x(slot), bullets.y(slot), bullets.vx(slot), bullets.vy(slot), bullets.damage(slot));
+    }
+
+    /**
+     * 生成并发布本帧快照
+     */
+    private void publishSnapshot() {
+        Map<String, WorldSnapshot.PlayerView> playerViews = new LinkedHashMap<>();
+        for (Player player : room.getPlayers().values()) {
+            // 尚未放置到出生点的玩家不出现在快照中
+            if (playerGrid.contains(player)) {
+                InputState input = inputs.get(player);
+                playerViews.put(player.getId(), new WorldSnapshot.PlayerView(player.getHandle(), player,
+                        input != null ? input.sequence : 0));
+            }
+        }
+
+        List<WorldSnapshot.BulletView> bulletViews = new ArrayList<>(bullets.size());
+        for (int i = 0, n = bullets.highWater(); i < n; i++) {
+            if (bullets.isAlive(i)) {
+                bulletViews.add(toBulletView(i));
+            }
+        }
+
+        if (obstaclesDirty) {
+            obstacleViews = room.getObstacles().stream()
+                    .map(WorldSnapshot.ObstacleView::new)
+                    .collect(Collectors.toUnmodifiableList());
+            obstaclesDirty = false;
+        }
+        if (powerUpsDirty) {
+            powerUpViews = room.getPowerUps().stream()
+                    .filter(PowerUp::isActive)
+                    .map(WorldSnapshot.PowerUpView::new)
+                    .collect(Collectors.toUnmodifiableList());
+            powerUpsDirty = false;
+            powerUpsVersion++;
+        }
+        if (visibilityDirty) {
+            visibilityMap = new VisibilityMap(room.getMapWidth(), room.getMapHeight(), room.getObstacles());
+            visibilityDirty = false;
+        }
+
+        snapshot = new WorldSnapshot(tickCount, rosterVersion, powerUpsVersion,
+                Collections.unmodifiableMap(playerViews), Collections.unmodifiableList(bulletViews),
+                obstacleViews, powerUpViews,
+                gameStartTime, room.getMapWidth(), room.getMapHeight(), visibilityMap);
+    }
+
+    private boolean isColliding(double x1, double y1, double r1, double x2, double y2, double w2, double h2) {
+        return x1 < x2 + w2 && x1 + r1 > x2 && y1 < y2 + h2 && y1 + r1 > y2;
+    }
+
+    /**
+     * 获取最近一帧发布的快照，可由任意线程调用
+     */
+    public WorldSnapshot getSnapshot() {
+        return snapshot;
+    }
+
+    public int getTickRate() {
+        return tickRate;
+    }
+
+    /**
+     * 房间是否静止：至少 idleTicks 帧没有命令、按住的按键和飞行中的子弹，
+     * 且 horizonMillis 内没有到期的道具。只由执行器在本房间的tick任务中调用
+     */
+    public boolean isQuiescent(long idleTicks, long horizonMillis) {
+        if (tickCount - lastActivityTick < idleTicks || bullets.size() > 0 || !commands.isEmpty()) {
+            return false;
+        }
+        LocalDateTime horizon = LocalDateTime.now().plusNanos(horizonMillis * 1_000_000L);
+        for (PowerUp powerUp : room.getPowerUps()) {
+            if (powerUp.isActive() && horizon.isAfter(powerUp.getCreateTime().plusSeconds(powerUp.getDuration()))) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    /**
+     * 设置降级等级，只由执行器在本房间的tick任务中调用
+     */
+    public void setThrottleLevel(int throttleLevel) {
+        this.throttleLevel = throttleLevel;
+    }
+
+    public List<Player> getPlayers() {
+        return new ArrayList<>(room.getPlayers().values());
+    }
+
+    public GameRoom getRoom() {
+        return room;
+    }
+
+    /**
+     * 输入驱动玩家的按键状态：最近一次输入的序号和按下的方向键
+     */
+    private static final class InputState {
+        private int sequence;
+        private int keys;
+    }
+
+    /**
+     * 静态地图层，不可变，整体替换发布；障碍物受损或摧毁时由模拟线程生成新的副本替换
+     */
+    private static final class MapLayer {
+        private final String mapId;
+        // 建立该层时房间的地图版本
+        private final int roomMapVersion;
+        private final MapAndPowerUpService.MapData map;
+        // 相对生成时的变化：障碍物ID -> 当前生命值，以及已摧毁的障碍物ID
+        private final Map<Integer, Integer> damaged;
+        private final List<Integer> destroyed;
+
+        private MapLayer(String mapId, int roomMapVersion, MapAndPowerUpService.MapData map,
+                         Map<Integer, Integer> damaged, List<Integer> destroyed) {
+            this.mapId = mapId;
+            this.roomMapVersion = roomMapVersion;
+            this.map = map;
+            this.damaged = Collections.unmodifiableMap(damaged);
+            this.destroyed = Collections.unmodifiableList(destroyed);
+        }
+
+        private MapLayer withDamage(int id, int health) {
+            Map<Integer, Integer> nextDamaged = new LinkedHashMap<>(damaged);
+            nextDamaged.put(id, health);
+            return new MapLayer(mapId, roomMapVersion, map, nextDamaged, new ArrayList<>(destroyed));
+        }
+
+        private MapLayer withDestroyed(int id) {
+            Map<Integer, Integer> nextDamaged = new LinkedHashMap<>(damaged);
+            nextDamaged.remove(id);
+            List<Integer> nextDestroyed = new ArrayList<>(destroyed);
+            nextDestroyed.add(id);
+            return new MapLayer(mapId, roomMapVersion, map, nextDamaged, nextDestroyed);
+        }
+    }
+}
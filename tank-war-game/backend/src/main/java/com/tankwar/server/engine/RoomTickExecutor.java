@@ -0,0 +1,418 @@
+package com.tankwar.server.engine;
+
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.ForkJoinWorkerThread;
+import java.util.concurrent.RecursiveAction;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.concurrent.locks.LockSupport;
+import java.util.function.Consumer;
+
+/**
+ * 房间tick执行器
+ *
+ * 一个调度线程按 System.nanoTime 驱动所有房间：每轮收集到期的房间，拆分后提交到工作窃取线程池并行tick，
+ * 全部完成（屏障）后再并行执行到期房间的快照广播，因此同一房间的tick和广播不会并发，不同房间之间互不等待。
+ * 每个房间各自维护下一次tick和快照的时间点，时间点对齐到执行器的公共时间网格，同频率的房间总在同一轮被调度；落后时在同一任务内最多连续追赶 MAX_CATCH_UP_TICKS 帧，
+ * 仍追不上的帧记为跳过；单帧耗时超过步长记为超时。
+ * 统计线程池利用率（任务耗时之和 / (经过时间 * 并行度)）和每个房间的tick耗时。
+ *
+ * 公平分配：每个房间每秒的tick和广播耗时不应超过 CPU 预算。超出时提高该房间的降级等级，
+ * 快照间隔和道具过期检查间隔按 2^等级 放宽，tick 本身不受影响；耗时回落到预算一半以下时逐级恢复。
+ * 降级只影响超预算房间自身的非关键工作，使线程池留给其他房间按时运行。超预算次数计入统计。
+ *
+ * 空闲降频：房间持续一段时间静止（没有命令、按键和子弹，近期也没有到期的道具）后，tick和快照都降到空闲频率；
+ * 房间收到任何命令时立即唤醒调度线程，在下一轮恢复正常频率。
+ */
+public class RoomTickExecutor implements Runnable {
+
+    private static final int MAX_CATCH_UP_TICKS = 5;
+    // 利用率统计窗口
+    private static final long UTILIZATION_WINDOW_NANOS = 1_000_000_000L;
+    // 单房间平均耗时的平滑系数
+    private static final double COST_SMOOTHING = 0.1;
+    // CPU预算的统计窗口和最高降级等级（快照频率最低降到 1/8）
+    private static final long BUDGET_WINDOW_NANOS = 1_000_000_000L;
+    private static final int MAX_THROTTLE_LEVEL = 3;
+
+    private final ForkJoinPool pool;
+    // 公共时间网格的起点
+    private final long epoch = System.nanoTime();
+    private final long snapshotNanos;
+    // 每个房间每秒允许的CPU时间，0表示不限制
+    private final long budgetNanos;
+    // 空闲时的tick间隔，以及进入空闲前需要持续静止的时长，0表示不降频
+    private final long idleTickNanos;
+    private final long idleAfterNanos;
+    private final Consumer<RoomEngine> snapshotListener;
+    private final List<RoomTask> rooms = new CopyOnWriteArrayList<>();
+    private volatile boolean running;
+    private volatile Thread thread;
+
+    // 统计数据
+    private final LongAdder busyNanos = new LongAdder();
+    private volatile long frames;
+    private volatile long lastFrameNanos;
+    private volatile long maxFrameNanos;
+    private volatile double utilization;
+    private final LongAdder budgetBreaches = new LongAdder();
+
+    public RoomTickExecutor(int parallelism, int snapshotRate, long budgetMillisPerSecond,
+                            int idleTickRate, long idleAfterMillis, Consumer<RoomEngine> snapshotListener) {
+        AtomicInteger workerIndex = new AtomicInteger();
+        this.pool = new ForkJoinPool(parallelism, forkJoinPool -> {
+            ForkJoinWorkerThread worker = ForkJoinPool.defaultForkJoinWorkerThreadFactory.newThread(forkJoinPool);
+            worker.setName("room-tick-" + workerIndex.incrementAndGet());
+            worker.setDaemon(true);
+            return worker;
+        }, null, false);
+        this.snapshotNanos = 1_000_000_000L / snapshotRate;
+        this.budgetNanos = Math.max(0, budgetMillisPerSecond) * 1_000_000L;
+        this.idleTickNanos = 1_000_000_000L / Math.max(1, idleTickRate);
+        this.idleAfterNanos = Math.max(0, idleAfterMillis) * 1_000_000L;
+        this.snapshotListener = snapshotListener;
+    }
+
+    public synchronized void start() {
+        if (running) {
+            return;
+        }
+        running = true;
+        thread = new Thread(this, "room-tick-scheduler");
+        thread.setDaemon(true);
+        thread.start();
+    }
+
+    public synchronized void stop() {
+        running = false;
+        if (thread != null) {
+            LockSupport.unpark(thread);
+            thread = null;
+        }
+        pool.shutdown();
+    }
+
+    public void addRoom(RoomEngine engine) {
+        RoomTask task = new RoomTask(engine);
+        engine.setWakeListener(task::wake);
+        rooms.add(task);
+    }
+
+    public void removeRoom(RoomEngine engine) {
+        engine.setWakeListener(() -> {});
+        rooms.removeIf(task -> task.engine == engine);
+    }
+
+    public int getRoomCount() {
+        return rooms.size();
+    }
+
+    @Override
+    public void run() {
+        long windowStart = System.nanoTime();
+        long windowBusy = 0;
+        List<RoomTask> due = new ArrayList<>();
+
+        while (running) {
+            long now = System.nanoTime();
+            for (RoomTask task : rooms) {
+                if (task.nextTick <= now || task.woken) {
+                    due.add(task);
+                }
+            }
+            if (!due.isEmpty()) {
+                long start = System.nanoTime();
+                pool.invoke(new Batch(due, 0, due.size(), false, now));
+                long elapsed = System.nanoTime() - start;
+                lastFrameNanos = elapsed;
+                if (elapsed > maxFrameNanos) {
+                    maxFrameNanos = elapsed;
+                }
+                frames++;
+                due.clear();
+            }
+
+            // 屏障之后才广播，快照一定是本轮tick完成后的状态
+            now = System.nanoTime();
+            for (RoomTask task : rooms) {
+                if (task.nextSnapshot <= now) {
+                    due.add(task);
+                }
+            }
+            if (!due.isEmpty()) {
+                pool.invoke(new Batch(due, 0, due.size(), true, now));
+                due.clear();
+            }
+
+            now = System.nanoTime();
+            if (now - windowStart >= UTILIZATION_WINDOW_NANOS) {
+                long busy = busyNanos.sum();
+                utilization = (double) (busy - windowBusy) / ((now - windowStart) * (double) pool.getParallelism());
+                windowBusy = busy;
+                windowStart = now;
+            }
+
+            // 休眠到最早到期的房间，没有房间时按快照周期轮询；
+            // 已标记唤醒的房间（如进入空闲时发现待执行命令）视为立即到期
+            long wakeAt = now + snapshotNanos;
+            for (RoomTask task : rooms) {
+                if (task.woken) {
+                    wakeAt = now;
+                    break;
+                }
+                wakeAt = Math.min(wakeAt, Math.min(task.nextTick, task.nextSnapshot));
+            }
+            long sleep = wakeAt - System.nanoTime();
+            if (sleep > 0) {
+                LockSupport.parkNanos(sleep);
+            }
+        }
+    }
+
+    /**
+     * 获取执行器和各房间的运行统计
+     */
+    public Map<String, Object> getStats() {
+        Map<String, Object> stats = new LinkedHashMap<>();
+        stats.put("parallelism", pool.getParallelism());
+        stats.put("poolSize", pool.getPoolSize());
+        stats.put("activeThreads", pool.getActiveThreadCount());
+        stats.put("stealCount", pool.getStealCount());
+        stats.put("utilization", Math.round(utilization * 1000) / 1000.0);
+        stats.put("snapshotRate", 1_000_000_000L / snapshotNanos);
+        stats.put("frames", frames);
+        stats.put("lastFrameMicros", lastFrameNanos / 1000);
+        stats.put("maxFrameMicros", maxFrameNanos / 1000);
+        stats.put("roomBudgetMillis", budgetNanos / 1_000_000);
+        stats.put("budgetBreaches", budgetBreaches.sum());
+        List<Map<String, Object>> roomStats = new ArrayList<>();
+        int throttled = 0;
+        int idle = 0;
+        for (RoomTask task : rooms) {
+            roomStats.add(task.getStats());
+            if (task.throttleLevel > 0) {
+                throttled++;
+            }
+            if (task.idle) {
+                idle++;
+            }
+        }
+        stats.put("throttledRooms", throttled);
+        stats.put("idleRooms", idle);
+        stats.put("rooms", roomStats);
+        return stats;
+    }
+
+    /**
+     * 公共时间网格上 now 之后的第一个周期点
+     */
+    private long alignAfter(long now, long period) {
+        return epoch + ((now - epoch) / period + 1) * period;
+    }
+
+    /**
+     * 把到期房间按二分拆分为子任务，空闲线程可从其他线程的队列中窃取
+     */
+    private final class Batch extends RecursiveAction {
+        private final List<RoomTask> tasks;
+        private final int from;
+        private final int to;
+        private final boolean snapshot;
+        private final long now;
+
+        private Batch(List<RoomTask> tasks, int from, int to, boolean snapshot, long now) {
+            this.tasks = tasks;
+            this.from = from;
+            this.to = to;
+            this.snapshot = snapshot;
+            this.now = now;
+        }
+
+        @Override
+        protected void compute() {
+            if (to - from > 1) {
+                int middle = (from + to) >>> 1;
+                invokeAll(new Batch(tasks, from, middle, snapshot, now), new Batch(tasks, middle, to, snapshot, now));
+                return;
+            }
+            long start = System.nanoTime();
+            if (snapshot) {
+                tasks.get(from).publish(now);
+            } else {
+                tasks.get(from).tick(now);
+            }
+            busyNanos.add(System.nanoTime() - start);
+        }
+    }
+
+    /**
+     * 单个房间的调度状态和统计，tick和广播由执行器保证不会并发
+     */
+    private final class RoomTask {
+        private final RoomEngine engine;
+        private long nextTick;
+        private long nextSnapshot;
+        // CPU预算窗口
+        private long windowStart;
+        private long windowNanos;
+        // 空闲降频状态：idle 只由tick任务修改，woken 由提交命令的线程设置（进入空闲时发现待执行命令也会设置）
+        private volatile boolean idle;
+        private volatile boolean woken;
+
+        // 统计数据
+        private volatile long ticks;
+        private volatile long overruns;
+        private volatile long skippedTicks;
+        private volatile long lastTickNanos;
+        private volatile long maxTickNanos;
+        private volatile double averageTickNanos;
+        private volatile int throttleLevel;
+        private volatile long lastWindowNanos;
+        private volatile long breaches;
+        private volatile long idlePeriods;
+
+        private RoomTask(RoomEngine engine) {
+            this.engine = engine;
+            long now = System.nanoTime();
+            this.nextTick = alignAfter(now, 1_000_000_000L / engine.getTickRate());
+            this.nextSnapshot = alignAfter(now, snapshotNanos);
+            this.windowStart = now;
+        }
+
+        /**
+         * 空闲时收到命令，标记唤醒并叫醒调度线程；非空闲时只有一次volatile读
+         */
+        private void wake() {
+            if (idle && !woken) {
+                woken = true;
+                Thread scheduler = thread;
+                if (scheduler != null) {
+                    LockSupport.unpark(scheduler);
+                }
+            }
+        }
+
+        private void tick(long now) {
+            long activeTickNanos = 1_000_000_000L / engine.getTickRate();
+            if (woken) {
+                woken = false;
+                if (idle) {
+                    // 立即恢复正常频率，快照也提前到下一个正常周期
+                    idle = false;
+                    nextTick = now;
+                    nextSnapshot = Math.min(nextSnapshot, alignAfter(now, snapshotNanos));
+                }
+            }
+            long tickNanos = idle ? idleTickNanos : activeTickNanos;
+            int steps = 0;
+            while (nextTick <= now && steps < MAX_CATCH_UP_TICKS) {
+                long start = System.nanoTime();
+                try {
+                    engine.tick();
+                } catch (Exception e) {
+                    // 单个房间出错不影响其他房间
+                    System.err.println("房间 " + engine.getRoom().getId() + " 更新失败: " + e.getMessage());
+                    e.printStackTrace();
+                }
+                long elapsed = System.nanoTime() - start;
+                lastTickNanos = elapsed;
+                if (elapsed > maxTickNanos) {
+                    maxTickNanos = elapsed;
+                }
+                if (elapsed > activeTickNanos) {
+                    overruns++;
+                }
+                averageTickNanos = ticks == 0 ? elapsed : averageTickNanos + (elapsed - averageTickNanos) * COST_SMOOTHING;
+                ticks++;
+                windowNanos += elapsed;
+                nextTick += tickNanos;
+                steps++;
+            }
+            // 追赶上限后仍落后的帧直接丢弃，避免雪崩
+            if (nextTick <= now) {
+                skippedTicks += (now - nextTick) / tickNanos + 1;
+                nextTick = alignAfter(now, tickNanos);
+            }
+            if (budgetNanos > 0 && now - windowStart >= BUDGET_WINDOW_NANOS) {
+                enforceBudget(now);
+            }
+            if (!idle && idleAfterNanos > 0
+                    && engine.isQuiescent(idleAfterNanos / activeTickNanos, idleTickNanos / 1_000_000)) {
+                idle = true;
+                idlePeriods++;
+                nextTick = alignAfter(now, idleTickNanos);
+                // 判断空闲与写入 idle 之间提交的命令看到的 idle 仍为 false，不会唤醒；写入后再检查一次队列
+                if (engine.hasPendingCommands()) {
+                    woken = true;
+                }
+            }
+        }
+
+        /**
+         * 按上一窗口的实际耗时（折算为每秒）调整降级等级
+         */
+        private void enforceBudget(long now) {
+            long used = windowNanos * BUDGET_WINDOW_NANOS / (now - windowStart);
+            lastWindowNanos = used;
+            windowNanos = 0;
+            windowStart = now;
+            int level = throttleLevel;
+            if (used > budgetNanos) {
+                breaches++;
+                budgetBreaches.increment();
+                level = Math.min(MAX_THROTTLE_LEVEL, level + 1);
+            } else if (used < budgetNanos / 2) {
+                level = Math.max(0, level - 1);
+            }
+            if (level != throttleLevel) {
+                throttleLevel = level;
+                engine.setThrottleLevel(level);
+                System.out.println("房间 " + engine.getRoom().getId() + " CPU耗时 " + used / 1_000_000
+                        + "ms/s，降级等级调整为 " + level);
+            }
+        }
+
+        private void publish(long now) {
+            long start = System.nanoTime();
+            try {
+                snapshotListener.accept(engine);
+            } catch (Exception e) {
+                System.err.println("房间 " + engine.getRoom().getId() + " 广播失败: " + e.getMessage());
+            }
+            windowNanos += System.nanoTime() - start;
+            // 降级时快照间隔按 2^等级 放宽，空闲时不短于空闲tick间隔
+            long interval = snapshotNanos << throttleLevel;
+            if (idle) {
+                interval = Math.max(interval, idleTickNanos);
+            }
+            nextSnapshot += interval;
+            // 严重落后时不补发快照，直接对齐到下一个周期
+            if (nextSnapshot <= now) {
+                nextSnapshot = alignAfter(now, interval);
+            }
+        }
+
+        private Map<String, Object> getStats() {
+            Map<String, Object> stats = new LinkedHashMap<>();
+            stats.put("roomId", engine.getRoom().getId());
+            stats.put("tickRate", engine.getTickRate());
+            stats.put("ticks", ticks);
+            stats.put("overruns", overruns);
+            stats.put("skippedTicks", skippedTicks);
+            stats.put("lastTickMicros", lastTickNanos / 1000);
+            stats.put("avgTickMicros", Math.round(averageTickNanos / 1000));
+            stats.put("maxTickMicros", maxTickNanos / 1000);
+            stats.put("cpuMillisPerSecond", lastWindowNanos / 1_000_000);
+            stats.put("throttleLevel", throttleLevel);
+            stats.put("budgetBreaches", breaches);
+            stats.put("idle", idle);
+            stats.put("idlePeriods", idlePeriods);
+            return stats;
+        }
+    }
+}
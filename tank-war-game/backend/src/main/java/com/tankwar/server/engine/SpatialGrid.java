@@ -0,0 +1,212 @@
+package com.tankwar.server.engine;
+
+import java.util.ArrayList;
+import java.util.IdentityHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.function.Consumer;
+import java.util.function.Predicate;
+
+/**
+ * 均匀网格空间哈希（碰撞检测粗筛）
+ *
+ * 按地图尺寸预先划分单元格，单元格桶存放在以 cy * columns + cx 为下标的数组中，查询时只遍历包围盒覆盖的单元格，
+ * 查找单元格不产生装箱和哈希开销。超出地图范围的坐标归入边缘单元格，粗筛结果仍然是保守的。
+ * 跨多个单元格的实体在一次查询中只会被回调一次。
+ * 非线程安全，只能由持有所属引擎的线程访问。
+ */
+public class SpatialGrid<T> {
+
+    private final double cellSize;
+    private final int columns;
+    private final int rows;
+    // 单元格桶，首次放入实体时创建，之后保留复用
+    private final List<Entry<T>>[] cells;
+    private final Map<T, Entry<T>> entries = new IdentityHashMap<>();
+    private int queryStamp;
+
+    public SpatialGrid(double cellSize, double width, double height) {
+        this.cellSize = cellSize;
+        this.columns = Math.max(1, (int) Math.ceil(width / cellSize) + 1);
+        this.rows = Math.max(1, (int) Math.ceil(height / cellSize) + 1);
+        this.cells = newBuckets(columns * rows);
+    }
+
+    /**
+     * 泛型数组只能以通配符类型创建，数组只在本类内部使用，转换是安全的
+     */
+    @SuppressWarnings("unchecked")
+    private static <T> List<Entry<T>>[] newBuckets(int size) {
+        return (List<Entry<T>>[]) new List<?>[size];
+    }
+
+    /**
+     * 插入实体，已存在时等同于 update
+     */
+    public void insert(T item, double x, double y, double width, double height) {
+        Entry<T> entry = entries.get(item);
+        if (entry != null) {
+            update(item, x, y, width, height);
+            return;
+        }
+        entry = new Entry<>(item);
+        setRange(entry, x, y, width, height);
+        entries.put(item, entry);
+        addToCells(entry);
+    }
+
+    /**
+     * 更新实体位置，只有覆盖的单元格变化时才移动
+     */
+    public void update(T item, double x, double y, double width, double height) {
+        Entry<T> entry = entries.get(item);
+        if (entry == null) {
+            insert(item, x, y, width, height);
+            return;
+        }
+        int minCx = column(x);
+        int minCy = row(y);
+        int maxCx = column(x + width);
+        int maxCy = row(y + height);
+        if (minCx == entry.minCx && minCy == entry.minCy && maxCx == entry.maxCx && maxCy == entry.maxCy) {
+            return;
+        }
+        removeFromCells(entry);
+        entry.minCx = minCx;
+        entry.minCy = minCy;
+        entry.maxCx = maxCx;
+        entry.maxCy = maxCy;
+        addToCells(entry);
+    }
+
+    public void remove(T item) {
+        Entry<T> entry = entries.remove(item);
+        if (entry != null) {
+            removeFromCells(entry);
+        }
+    }
+
+    public boolean contains(T item) {
+        return entries.containsKey(item);
+    }
+
+    public int size() {
+        return entries.size();
+    }
+
+    public void clear() {
+        for (List<Entry<T>> bucket : cells) {
+            if (bucket != null) {
+                bucket.clear();
+            }
+        }
+        entries.clear();
+    }
+
+    /**
+     * 回调包围盒可能与给定区域重叠的所有实体（粗筛结果，需调用方做精确检测）
+     */
+    public void query(double x, double y, double width, double height, Consumer<T> consumer) {
+        int stamp = ++queryStamp;
+        int minCy = row(y);
+        int maxCx = column(x + width);
+        int maxCy = row(y + height);
+        for (int cx = column(x); cx <= maxCx; cx++) {
+            for (int cy = minCy; cy <= maxCy; cy++) {
+                List<Entry<T>> bucket = cells[cy * columns + cx];
+                if (bucket == null) continue;
+                for (int i = 0; i < bucket.size(); i++) {
+                    Entry<T> entry = bucket.get(i);
+                    if (entry.stamp != stamp) {
+                        entry.stamp = stamp;
+                        consumer.accept(entry.item);
+                    }
+                }
+            }
+        }
+    }
+
+    /**
+     * 判断区域内是否存在满足条件的实体，找到即返回
+     */
+    public boolean anyMatch(double x, double y, double width, double height, Predicate<T> predicate) {
+        int stamp = ++queryStamp;
+        int minCy = row(y);
+        int maxCx = column(x + width);
+        int maxCy = row(y + height);
+        for (int cx = column(x); cx <= maxCx; cx++) {
+            for (int cy = minCy; cy <= maxCy; cy++) {
+                List<Entry<T>> bucket = cells[cy * columns + cx];
+                if (bucket == null) continue;
+                for (int i = 0; i < bucket.size(); i++) {
+                    Entry<T> entry = bucket.get(i);
+                    if (entry.stamp != stamp) {
+                        entry.stamp = stamp;
+                        if (predicate.test(entry.item)) {
+                            return true;
+                        }
+                    }
+                }
+            }
+        }
+        return false;
+    }
+
+    private void setRange(Entry<T> entry, double x, double y, double width, double height) {
+        entry.minCx = column(x);
+        entry.minCy = row(y);
+        entry.maxCx = column(x + width);
+        entry.maxCy = row(y + height);
+    }
+
+    private void addToCells(Entry<T> entry) {
+        for (int cx = entry.minCx; cx <= entry.maxCx; cx++) {
+            for (int cy = entry.minCy; cy <= entry.maxCy; cy++) {
+                int index = cy * columns + cx;
+                List<Entry<T>> bucket = cells[index];
+                if (bucket == null) {
+                    bucket = new ArrayList<>(4);
+                    cells[index] = bucket;
+                }
+                bucket.add(entry);
+            }
+        }
+    }
+
+    private void removeFromCells(Entry<T> entry) {
+        for (int cx = entry.minCx; cx <= entry.maxCx; cx++) {
+            for (int cy = entry.minCy; cy <= entry.maxCy; cy++) {
+                List<Entry<T>> bucket = cells[cy * columns + cx];
+                if (bucket != null) {
+                    // 空桶保留复用
+                    bucket.remove(entry);
+                }
+            }
+        }
+    }
+
+    private int column(double x) {
+        return clamp((int) Math.floor(x / cellSize), columns);
+    }
+
+    private int row(double y) {
+        return clamp((int) Math.floor(y / cellSize), rows);
+    }
+
+    private static int clamp(int cell, int count) {
+        return cell < 0 ? 0 : Math.min(cell, count - 1);
+    }
+
+    private static class Entry<T> {
+        private final T item;
+        private int minCx;
+        private int minCy;
+        private int maxCx;
+        private int maxCy;
+        private int stamp;
+
+        private Entry(T item) {
+            this.item = item;
+        }
+    }
+}
@@ -0,0 +1,119 @@
+package com.tankwar.server.engine;
+
+import com.tankwar.server.model.Obstacle;
+
+import java.util.Arrays;
+import java.util.Collection;
+
+/**
+ * 出生点候选表
+ *
+ * 出生范围内按坦克边长划分候选位置，每个候选记录与之重叠的障碍物数和坦克数，两者都为0即为空闲。
+ * 空闲候选保存在可随机抽取的紧凑数组中，查询为O(1)，结果一定不与障碍物和坦克重叠。
+ * 地图生成时整体建立；之后砖墙摧毁、坦克出生、移动和离开时只更新受影响的几个候选。
+ * 只由房间的模拟线程调用，不是线程安全的。
+ */
+public final class SpawnMap {
+
+    // 出生范围距地图边缘的距离，与原随机出生的范围一致
+    private static final double MARGIN = 50;
+    private static final double TANK_SIZE = 20;
+
+    private final int columns;
+    private final int rows;
+    private final int[] obstacleCount;
+    private final int[] tankCount;
+    // 空闲候选：free[0..freeSize) 为候选下标，freeIndex 为反向索引，不空闲时为-1
+    private final int[] free;
+    private final int[] freeIndex;
+    private int freeSize;
+
+    public SpawnMap(int mapWidth, int mapHeight, Collection<Obstacle> obstacles) {
+        this.columns = Math.max(1, (int) Math.floor((mapWidth - MARGIN * 2) / TANK_SIZE) + 1);
+        this.rows = Math.max(1, (int) Math.floor((mapHeight - MARGIN * 2) / TANK_SIZE) + 1);
+        int size = columns * rows;
+        this.obstacleCount = new int[size];
+        this.tankCount = new int[size];
+        this.free = new int[size];
+        this.freeIndex = new int[size];
+        Arrays.fill(freeIndex, -1);
+        // 与障碍物网格一致，登记列表中的全部障碍物，被摧毁的由 removeObstacle 移除
+        for (Obstacle obstacle : obstacles) {
+            adjust(obstacleCount, obstacle.getX(), obstacle.getY(), obstacle.getWidth(), obstacle.getHeight(), 1);
+        }
+        for (int i = 0; i < size; i++) {
+            if (obstacleCount[i] == 0) {
+                markFree(i);
+            }
+        }
+    }
+
+    /**
+     * 随机返回一个空闲出生点（坦克左上角坐标），没有空闲位置时返回 null
+     */
+    public double[] pick() {
+        if (freeSize == 0) {
+            return null;
+        }
+        int candidate = free[(int) (Math.random() * freeSize)];
+        return new double[]{MARGIN + (candidate % columns) * TANK_SIZE, MARGIN + (candidate / columns) * TANK_SIZE};
+    }
+
+    public void addTank(double x, double y) {
+        adjust(tankCount, x, y, TANK_SIZE, TANK_SIZE, 1);
+    }
+
+    public void removeTank(double x, double y) {
+        adjust(tankCount, x, y, TANK_SIZE, TANK_SIZE, -1);
+    }
+
+    public void moveTank(double fromX, double fromY, double toX, double toY) {
+        if (fromX != toX || fromY != toY) {
+            removeTank(fromX, fromY);
+            addTank(toX, toY);
+        }
+    }
+
+    public void removeObstacle(Obstacle obstacle) {
+        adjust(obstacleCount, obstacle.getX(), obstacle.getY(), obstacle.getWidth(), obstacle.getHeight(), -1);
+    }
+
+    public int getFreeCount() {
+        return freeSize;
+    }
+
+    /**
+     * 对与矩形重叠的所有候选计数加减 delta，并同步空闲数组；重叠判定与碰撞检测相同（边界相接不算重叠）
+     */
+    private void adjust(int[] counts, double x, double y, double width, double height, int delta) {
+        int minColumn = Math.max(0, (int) Math.floor((x - TANK_SIZE - MARGIN) / TANK_SIZE) + 1);
+        int maxColumn = Math.min(columns - 1, (int) Math.ceil((x + width - MARGIN) / TANK_SIZE) - 1);
+        int minRow = Math.max(0, (int) Math.floor((y - TANK_SIZE - MARGIN) / TANK_SIZE) + 1);
+        int maxRow = Math.min(rows - 1, (int) Math.ceil((y + height - MARGIN) / TANK_SIZE) - 1);
+        for (int row = minRow; row <= maxRow; row++) {
+            for (int column = minColumn; column <= maxColumn; column++) {
+                int candidate = row * columns + column;
+                counts[candidate] += delta;
+                boolean isFree = obstacleCount[candidate] == 0 && tankCount[candidate] == 0;
+                if (isFree && freeIndex[candidate] < 0) {
+                    markFree(candidate);
+                } else if (!isFree && freeIndex[candidate] >= 0) {
+                    unmarkFree(candidate);
+                }
+            }
+        }
+    }
+
+    private void markFree(int candidate) {
+        freeIndex[candidate] = freeSize;
+        free[freeSize++] = candidate;
+    }
+
+    private void unmarkFree(int candidate) {
+        int index = freeIndex[candidate];
+        int last = free[--freeSize];
+        free[index] = last;
+        freeIndex[last] = index;
+        freeIndex[candidate] = -1;
+    }
+}
@@ -0,0 +1,134 @@
+package com.tankwar.server.engine;
+
+import com.tankwar.server.model.Obstacle;
+
+import java.util.BitSet;
+import java.util.Collection;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * 视线遮挡表
+ *
+ * 地图按20px划分为格子，被障碍物覆盖中心点的格子视为不透明。
+ * 两个格子是否互相可见由格子中心之间的射线遍历（DDA）决定，结果按来源格子缓存，
+ * 同一来源格子的后续查询直接命中缓存。障碍物被摧毁时由引擎重建新的实例，
+ * 已发布的快照继续使用旧实例，因此实例本身不可变，可被多个线程同时查询。
+ */
+public final class VisibilityMap {
+
+    public static final double TILE_SIZE = 20;
+
+    private final int columns;
+    private final int rows;
+    private final BitSet opaque;
+    private final ConcurrentHashMap<Integer, TileVisibility> cache = new ConcurrentHashMap<>();
+
+    public VisibilityMap(int mapWidth, int mapHeight, Collection<Obstacle> obstacles) {
+        this.columns = Math.max(1, (int) Math.ceil(mapWidth / TILE_SIZE));
+        this.rows = Math.max(1, (int) Math.ceil(mapHeight / TILE_SIZE));
+        this.opaque = new BitSet(columns * rows);
+        for (Obstacle obstacle : obstacles) {
+            if (obstacle.isDestroyed()) continue;
+            int minColumn = Math.max(0, tile(obstacle.getX()));
+            int maxColumn = Math.min(columns - 1, tile(obstacle.getX() + obstacle.getWidth()));
+            int minRow = Math.max(0, tile(obstacle.getY()));
+            int maxRow = Math.min(rows - 1, tile(obstacle.getY() + obstacle.getHeight()));
+            for (int row = minRow; row <= maxRow; row++) {
+                double centerY = (row + 0.5) * TILE_SIZE;
+                if (centerY < obstacle.getY() || centerY > obstacle.getY() + obstacle.getHeight()) continue;
+                for (int column = minColumn; column <= maxColumn; column++) {
+                    double centerX = (column + 0.5) * TILE_SIZE;
+                    if (centerX >= obstacle.getX() && centerX <= obstacle.getX() + obstacle.getWidth()) {
+                        opaque.set(row * columns + column);
+                    }
+                }
+            }
+        }
+    }
+
+    /**
+     * 判断两点之间的视线是否被障碍物遮挡，端点所在的格子本身不计入遮挡
+     */
+    public boolean canSee(double fromX, double fromY, double toX, double toY) {
+        int from = index(fromX, fromY);
+        int to = index(toX, toY);
+        if (from == to) {
+            return true;
+        }
+        TileVisibility visibility = cache.computeIfAbsent(from, key -> new TileVisibility());
+        synchronized (visibility) {
+            if (!visibility.known.get(to)) {
+                if (trace(from, to)) {
+                    visibility.visible.set(to);
+                }
+                visibility.known.set(to);
+            }
+            return visibility.visible.get(to);
+        }
+    }
+
+    /**
+     * 已缓存可见性的来源格子数
+     */
+    public int getCachedTiles() {
+        return cache.size();
+    }
+
+    /**
+     * 沿两个格子中心之间的射线逐格前进，经过不透明格子即被遮挡
+     */
+    private boolean trace(int from, int to) {
+        int column = from % columns;
+        int row = from / columns;
+        int targetColumn = to % columns;
+        int targetRow = to / columns;
+        int dx = Math.abs(targetColumn - column);
+        int dy = Math.abs(targetRow - row);
+        int stepX = targetColumn > column ? 1 : -1;
+        int stepY = targetRow > row ? 1 : -1;
+        // 以格子为单位的整数DDA：error 比较下一次跨越竖线和横线的先后
+        int error = dx - dy;
+        dx *= 2;
+        dy *= 2;
+        while (true) {
+            if (error > 0) {
+                column += stepX;
+                error -= dy;
+            } else if (error < 0) {
+                row += stepY;
+                error += dx;
+            } else {
+                // 恰好穿过格点，两侧格子都不透明时才算遮挡
+                boolean sideA = opaque.get(row * columns + column + stepX);
+                boolean sideB = opaque.get((row + stepY) * columns + column);
+                column += stepX;
+                row += stepY;
+                error += dx - dy;
+                if (sideA && sideB) {
+                    return false;
+                }
+            }
+            if (column == targetColumn && row == targetRow) {
+                return true;
+            }
+            if (opaque.get(row * columns + column)) {
+                return false;
+            }
+        }
+    }
+
+    private int index(double x, double y) {
+        int column = Math.max(0, Math.min(columns - 1, tile(x)));
+        int row = Math.max(0, Math.min(rows - 1, tile(y)));
+        return row * columns + column;
+    }
+
+    private static int tile(double coordinate) {
+        return (int) Math.floor(coordinate / TILE_SIZE);
+    }
+
+    private static final class TileVisibility {
+        private final BitSet known = new BitSet();
+        private final BitSet visible = new BitSet();
+    }
+}
@@ -0,0 +1,298 @@
+package com.tankwar.server.engine;
+
+import com.fasterxml.jackson.annotation.JsonIgnore;
+import com.tankwar.server.model.Obstacle;
+import com.tankwar.server.model.Player;
+import com.tankwar.server.model.PowerUp;
+
+import java.time.LocalDateTime;
+import java.util.List;
+import java.util.Map;
+import java.util.function.Consumer;
+
+/**
+ * 房间世界的不可变快照
+ *
+ * 模拟线程在每帧结束时生成并发布，广播和REST接口只读取快照，不接触正在被修改的世界。
+ * JSON字段与原游戏状态结构保持一致，兼容现有客户端；
+ * 二进制协议不传输障碍物列表，改由静态地图层和受损/摧毁事件同步。
+ * 兴趣过滤需要按位置查询时，首次查询才建立玩家和子弹的空间网格，之后各会话共用。
+ * 视线判断使用本帧障碍物状态对应的遮挡表，砖墙被摧毁后的快照才引用新表。
+ */
+public final class WorldSnapshot {
+
+    // 兴趣查询网格的单元大小，远大于碰撞网格，查询半径通常为数百像素
+    private static final double INTEREST_CELL_SIZE = 160;
+
+    private final long tick;
+    private final int rosterVersion;
+    private final int powerUpsVersion;
+    private final Map<String, PlayerView> players;
+    private final List<BulletView> bullets;
+    private final List<ObstacleView> obstacles;
+    private final List<PowerUpView> powerUps;
+    private final long gameStartTime;
+    private final int mapWidth;
+    private final int mapHeight;
+    private final VisibilityMap visibility;
+    private SpatialGrid<PlayerView> playerIndex;
+    private SpatialGrid<BulletView> bulletIndex;
+
+    public WorldSnapshot(long tick, int rosterVersion, int powerUpsVersion,
+                         Map<String, PlayerView> players, List<BulletView> bullets,
+                         List<ObstacleView> obstacles, List<PowerUpView> powerUps,
+                         long gameStartTime, int mapWidth, int mapHeight, VisibilityMap visibility) {
+        this.tick = tick;
+        this.rosterVersion = rosterVersion;
+        this.powerUpsVersion = powerUpsVersion;
+        this.players = players;
+        this.bullets = bullets;
+        this.obstacles = obstacles;
+        this.powerUps = powerUps;
+        this.gameStartTime = gameStartTime;
+        this.mapWidth = mapWidth;
+        this.mapHeight = mapHeight;
+        this.visibility = visibility;
+    }
+
+    /**
+     * 不含子弹的视图，供由事件自行外推子弹的客户端使用，序列化后 bullets 为 null
+     */
+    public WorldSnapshot withoutBullets() {
+        return new WorldSnapshot(tick, rosterVersion, powerUpsVersion, players, null, obstacles, powerUps,
+                gameStartTime, mapWidth, mapHeight, visibility);
+    }
+
+    /**
+     * 判断两点之间是否没有障碍物遮挡，未提供遮挡表时视为可见
+     */
+    public boolean canSee(double fromX, double fromY, double toX, double toY) {
+        return visibility == null || visibility.canSee(fromX, fromY, toX, toY);
+    }
+
+    /**
+     * 回调与以 (x, y) 为中心、边长 2*radius 的方形区域重叠的玩家（粗筛，调用方需自行计算距离）
+     */
+    public synchronized void queryPlayers(double x, double y, double radius, Consumer<PlayerView> consumer) {
+        if (playerIndex == null) {
+            playerIndex = new SpatialGrid<>(INTEREST_CELL_SIZE, mapWidth, mapHeight);
+            for (PlayerView player : players.values()) {
+                playerIndex.insert(player, player.getX(), player.getY(), 0, 0);
+            }
+        }
+        playerIndex.query(x - radius, y - radius, radius * 2, radius * 2, consumer);
+    }
+
+    /**
+     * 回调与方形区域重叠的子弹，同 {@link #queryPlayers}
+     */
+    public synchronized void queryBullets(double x, double y, double radius, Consumer<BulletView> consumer) {
+        if (bulletIndex == null) {
+            bulletIndex = new SpatialGrid<>(INTEREST_CELL_SIZE, mapWidth, mapHeight);
+            for (BulletView bullet : bullets) {
+                bulletIndex.insert(bullet, bullet.getX(), bullet.getY(), 0, 0);
+            }
+        }
+        bulletIndex.query(x - radius, y - radius, radius * 2, radius * 2, consumer);
+    }
+
+    public long getTick() { return tick; }
+
+    /**
+     * 玩家名单版本，玩家加入或离开时递增（二进制协议据此决定是否重发名单）
+     */
+    @JsonIgnore
+    public int getRosterVersion() { return rosterVersion; }
+
+    /**
+     * 道具版本，道具生成、拾取或过期时递增
+     */
+    @JsonIgnore
+    public int getPowerUpsVersion() { return powerUpsVersion; }
+
+    public Map<String, PlayerView> getPlayers() { return players; }
+    public List<BulletView> getBullets() { return bullets; }
+    public List<ObstacleView> getObstacles() { return obstacles; }
+    public List<PowerUpView> getPowerUps() { return powerUps; }
+    public boolean isGameRunning() { return true; }
+    public long getGameStartTime() { return gameStartTime; }
+    public int getMapWidth() { return mapWidth; }
+    public int getMapHeight() { return mapHeight; }
+
+    /**
+     * 玩家快照
+     */
+    public static final class PlayerView {
+        private final int handle;
+        private final String id;
+        private final String name;
+        private final double x;
+        private final double y;
+        private final int direction;
+        private final int health;
+        private final int maxHealth;
+        private final int score;
+        private final int kills;
+        private final int deaths;
+        private final String color;
+        private final double speed;
+        private final boolean alive;
+        private final LocalDateTime lastActiveTime;
+        private final int powerUpLevel;
+        private final String powerUpType;
+        private final int inputSeq;
+
+        public PlayerView(int handle, Player player, int inputSeq) {
+            this.handle = handle;
+            this.inputSeq = inputSeq;
+            this.id = player.getId();
+            this.name = player.getName();
+            this.x = player.getX();
+            this.y = player.getY();
+            this.direction = player.getDirection();
+            this.health = player.getHealth();
+            this.maxHealth = player.getMaxHealth();
+            this.score = player.getScore();
+            this.kills = player.getKills();
+            this.deaths = player.getDeaths();
+            this.color = player.getColor();
+            this.speed = player.getSpeed();
+            this.alive = player.isAlive();
+            this.lastActiveTime = player.getLastActiveTime();
+            this.powerUpLevel = player.getPowerUpLevel();
+            this.powerUpType = player.getPowerUpType();
+        }
+
+        @JsonIgnore
+        public int getHandle() { return handle; }
+        public String getId() { return id; }
+        public String getName() { return name; }
+        public double getX() { return x; }
+        public double getY() { return y; }
+        public int getDirection() { return direction; }
+        public int getHealth() { return health; }
+        public int getMaxHealth() { return maxHealth; }
+        public int getScore() { return score; }
+        public int getKills() { return kills; }
+        public int getDeaths() { return deaths; }
+        public String getColor() { return color; }
+        public double getSpeed() { return speed; }
+        public boolean isAlive() { return alive; }
+        public LocalDateTime getLastActiveTime() { return lastActiveTime; }
+        public int getPowerUpLevel() { return powerUpLevel; }
+        public String getPowerUpType() { return powerUpType; }
+
+        /**
+         * 服务端最近处理的输入序号，客户端据此对本地预测进行校正
+         */
+        public int getInputSeq() { return inputSeq; }
+    }
+
+    /**
+     * 子弹快照
+     */
+    public static final class BulletView {
+        private final int handle;
+        private final int ownerHandle;
+        private final String playerId;
+        private final double x;
+        private final double y;
+        private final double vx;
+        private final double vy;
+        private final int damage;
+
+        public BulletView(int handle, int ownerHandle, String playerId,
+                          double x, double y, double vx, double vy, int damage) {
+            this.handle = handle;
+            this.ownerHandle = ownerHandle;
+            this.playerId = playerId;
+            this.x = x;
+            this.y = y;
+            this.vx = vx;
+            this.vy = vy;
+            this.damage = damage;
+        }
+
+        @JsonIgnore
+        public int getHandle() { return handle; }
+        @JsonIgnore
+        public int getOwnerHandle() { return ownerHandle; }
+        public String getId() { return String.valueOf(handle); }
+        public String getPlayerId() { return playerId; }
+        public double getX() { return x; }
+        public double getY() { return y; }
+        public double getVx() { return vx; }
+        public double getVy() { return vy; }
+        public int getDamage() { return damage; }
+        public double getSpeed() { return Math.hypot(vx, vy); }
+        public boolean isActive() { return true; }
+    }
+
+    /**
+     * 障碍物快照
+     */
+    public static final class ObstacleView {
+        private final double x;
+        private final double y;
+        private final double width;
+        private final double height;
+        private final String type;
+        private final int health;
+        private final boolean destructible;
+
+        public ObstacleView(Obstacle obstacle) {
+            this.x = obstacle.getX();
+            this.y = obstacle.getY();
+            this.width = obstacle.getWidth();
+            this.height = obstacle.getHeight();
+            this.type = obstacle.getType();
+            this.health = obstacle.getHealth();
+            this.destructible = obstacle.isDestructible();
+        }
+
+        public double getX() { return x; }
+        public double getY() { return y; }
+        public double getWidth() { return width; }
+        public double getHeight() { return height; }
+        public String getType() { return type; }
+        public int getHealth() { return health; }
+        public boolean isDestructible() { return destructible; }
+    }
+
+    /**
+     * 道具快照
+     */
+    public static final class PowerUpView {
+        private final int id;
+        private final double x;
+        private final double y;
+        private final String type;
+        private final String color;
+        private final int radius;
+        private final boolean active;
+        private final LocalDateTime createTime;
+        private final int duration;
+
+        public PowerUpView(PowerUp powerUp) {
+            this.id = powerUp.getId();
+            this.x = powerUp.getX();
+            this.y = powerUp.getY();
+            this.type = powerUp.getType();
+            this.color = powerUp.getColor();
+            this.radius = powerUp.getRadius();
+            this.active = powerUp.isActive();
+            this.createTime = powerUp.getCreateTime();
+            this.duration = powerUp.getDuration();
+        }
+
+        public int getId() { return id; }
+        public double getX() { return x; }
+        public double getY() { return y; }
+        public String getType() { return type; }
+        public String getColor() { return color; }
+        public int getRadius() { return radius; }
+        public boolean isActive() { return active; }
+        public LocalDateTime getCreateTime() { return createTime; }
+        public int getDuration() { return duration; }
+    }
+}
@@ -0,0 +1,58 @@
+package com.tankwar.server.handler;
+
+import org.springframework.web.socket.WebSocketMessage;
+
+import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.function.Consumer;
+
+/**
+ * 房间广播组
+ *
+ * 保存同一房间内各会话的发送队列，房间消息只序列化一次，再分发给组内成员。
+ * 成员只在加入/离开时变化，而广播每帧都会发生，因此使用写时复制列表，广播时无需加锁。
+ */
+public class BroadcastGroup {
+
+    private final String roomId;
+    private final List<SessionOutbound> members = new CopyOnWriteArrayList<>();
+
+    public BroadcastGroup(String roomId) {
+        this.roomId = roomId;
+    }
+
+    public void add(SessionOutbound member) {
+        members.add(member);
+    }
+
+    public void remove(String sessionId) {
+        members.removeIf(member -> member.getSession().getId().equals(sessionId));
+    }
+
+    /**
+     * 向组内成员发送同一条消息，excludeSessionId 不为空时跳过该会话
+     */
+    public void send(WebSocketMessage<?> message, String excludeSessionId) {
+        for (SessionOutbound member : members) {
+            if (!member.getSession().getId().equals(excludeSessionId)) {
+                member.send(message);
+            }
+        }
+    }
+
+    public void forEach(Consumer<SessionOutbound> action) {
+        members.forEach(action);
+    }
+
+    public String getRoomId() {
+        return roomId;
+    }
+
+    public int size() {
+        return members.size();
+    }
+
+    public boolean isEmpty() {
+        return members.isEmpty();
+    }
+}
@@ -0,0 +1,232 @@
+package com.tankwar.server.handler;
+
+import org.springframework.web.socket.CloseStatus;
+import org.springframework.web.socket.WebSocketMessage;
+import org.springframework.web.socket.WebSocketSession;
+
+import java.util.ArrayDeque;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.Executor;
+
+/**
+ * 会话的有界发送队列
+ *
+ * 所有发往该会话的消息先入队，再由写线程逐条发送，同一会话任意时刻只有一个发送在进行，
+ * 调用方（模拟线程、WebSocket线程）从不阻塞在慢客户端上。
+ * 开启合并时，队列中尚未发出的快照被移除，新快照排到队尾，保证快照不会越过在它之前入队的事件；队列满时优先丢弃最旧的快照，
+ * 仍然放不下，或单次发送超过时限，则判定为慢客户端并断开连接。
+ */
+public class SessionOutbound {
+
+    private final WebSocketSession session;
+    private final Executor writer;
+    private final int maxQueue;
+    private final long sendTimeLimitNanos;
+    private final boolean coalesceSnapshots;
+
+    private final ArrayDeque<Entry> queue = new ArrayDeque<>();
+    private Entry pendingSnapshot;
+    private boolean draining;
+    private boolean closed;
+    private volatile long sendStartedAt;
+
+    // 统计数据
+    private volatile long sent;
+    private volatile long bytesSent;
+    private volatile long coalesced;
+    private volatile long droppedSnapshots;
+    private volatile int maxDepth;
+
+    public SessionOutbound(WebSocketSession session, Executor writer, int maxQueue, long sendTimeLimitMillis,
+                           boolean coalesceSnapshots) {
+        this.session = session;
+        this.writer = writer;
+        this.maxQueue = maxQueue;
+        this.sendTimeLimitNanos = sendTimeLimitMillis * 1_000_000L;
+        this.coalesceSnapshots = coalesceSnapshots;
+    }
+
+    /**
+     * 发送普通消息（事件、聊天等），保证按入队顺序送达
+     */
+    public void send(WebSocketMessage<?> message) {
+        enqueue(message, false);
+    }
+
+    /**
+     * 发送快照，开启合并时未发出的旧快照被丢弃，新快照排在队尾
+     */
+    public void sendSnapshot(WebSocketMessage<?> message) {
+        enqueue(message, true);
+    }
+
+    private void enqueue(WebSocketMessage<?> message, boolean snapshot) {
+        String overflow = null;
+        boolean schedule = false;
+        synchronized (this) {
+            if (closed) {
+                return;
+            }
+            long started = sendStartedAt;
+            if (started != 0 && System.nanoTime() - started > sendTimeLimitNanos) {
+                overflow = "发送超时";
+            } else {
+                if (snapshot && coalesceSnapshots && pendingSnapshot != null) {
+                    queue.remove(pendingSnapshot);
+                    pendingSnapshot = null;
+                    coalesced++;
+                }
+                if (queue.size() >= maxQueue && !dropOldestSnapshot()) {
+                    overflow = "发送队列已满";
+                }
+            }
+            if (overflow == null) {
+                Entry entry = new Entry(message, snapshot);
+                queue.add(entry);
+                if (snapshot) {
+                    pendingSnapshot = entry;
+                }
+                if (queue.size() > maxDepth) {
+                    maxDepth = queue.size();
+                }
+            }
+
+            if (overflow == null && !draining) {
+                draining = true;
+                schedule = true;
+            }
+        }
+
+        if (overflow != null) {
+            disconnect(overflow);
+        } else if (schedule) {
+            writer.execute(this::drain);
+        }
+    }
+
+    private boolean dropOldestSnapshot() {
+        for (Iterator<Entry> it = queue.iterator(); it.hasNext(); ) {
+            Entry entry = it.next();
+            if (entry.snapshot) {
+                it.remove();
+                if (entry == pendingSnapshot) {
+                    pendingSnapshot = null;
+                }
+                droppedSnapshots++;
+                return true;
+            }
+        }
+        return false;
+    }
+
+    private void drain() {
+        while (true) {
+            Entry entry;
+            synchronized (this) {
+                entry = queue.poll();
+                if (entry == null || closed) {
+                    draining = false;
+                    return;
+                }
+                if (entry == pendingSnapshot) {
+                    pendingSnapshot = null;
+                }
+                sendStartedAt = System.nanoTime();
+            }
+
+            try {
+                if (session.isOpen()) {
+                    session.sendMessage(entry.message);
+                    sent++;
+                    bytesSent += entry.message.getPayloadLength();
+                }
+            } catch (Exception e) {
+                System.err.println("发送消息失败: " + session.getId() + " " + e.getMessage());
+            } finally {
+                sendStartedAt = 0;
+            }
+        }
+    }
+
+    /**
+     * 判定为慢客户端，清空队列并在写线程上关闭连接，避免阻塞调用方
+     */
+    private void disconnect(String reason) {
+        synchronized (this) {
+            if (closed) {
+                return;
+            }
+            closed = true;
+            queue.clear();
+            pendingSnapshot = null;
+        }
+        System.err.println("断开慢客户端 " + session.getId() + ": " + reason);
+        writer.execute(() -> {
+            try {
+                session.close(CloseStatus.SESSION_NOT_RELIABLE);
+            } catch (Exception e) {
+                System.err.println("关闭会话失败: " + e.getMessage());
+            }
+        });
+    }
+
+    /**
+     * 连接已关闭，丢弃未发送的消息
+     */
+    public synchronized void close() {
+        closed = true;
+        queue.clear();
+        pendingSnapshot = null;
+    }
+
+    public WebSocketSession getSession() {
+        return session;
+    }
+
+    public synchronized int getQueueDepth() {
+        return queue.size();
+    }
+
+    /**
+     * 已发出的字节数，按消息负载计算
+     */
+    public long getBytesSent() {
+        return bytesSent;
+    }
+
+    /**
+     * 是否有消息排队或正在发送，带宽预算据此判断链路是否跟得上
+     */
+    public synchronized boolean isBacklogged() {
+        return !queue.isEmpty() || sendStartedAt != 0;
+    }
+
+    /**
+     * 获取发送队列统计
+     */
+    public Map<String, Object> getStats() {
+        long started = sendStartedAt;
+        Map<String, Object> stats = new LinkedHashMap<>();
+        stats.put("sessionId", session.getId());
+        stats.put("queueDepth", getQueueDepth());
+        stats.put("maxQueueDepth", maxDepth);
+        stats.put("sent", sent);
+        stats.put("bytesSent", bytesSent);
+        stats.put("coalescedSnapshots", coalesced);
+        stats.put("droppedSnapshots", droppedSnapshots);
+        stats.put("sendingMillis", started != 0 ? (System.nanoTime() - started) / 1_000_000 : 0);
+        return stats;
+    }
+
+    private static final class Entry {
+        private final WebSocketMessage<?> message;
+        private final boolean snapshot;
+
+        private Entry(WebSocketMessage<?> message, boolean snapshot) {
+            this.message = message;
+            this.snapshot = snapshot;
+        }
+    }
+}
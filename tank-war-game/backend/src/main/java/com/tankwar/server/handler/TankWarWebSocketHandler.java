@@ -2,18 +2,29 @@ package com.tankwar.server.handler;
 
 import com.fasterxml.jackson.databind.ObjectMapper;
 import com.fasterxml.jackson.datatype.jsr310.JavaTimeModule;
+import com.tankwar.server.engine.WorldSnapshot;
 import com.tankwar.server.model.*;
-import com.tankwar.server.repository.PlayerStatsRepository;
+import com.tankwar.server.protocol.InboundDecoder;
+import com.tankwar.server.protocol.InterestFilter;
+import com.tankwar.server.protocol.PrioritySnapshotBuilder;
+import com.tankwar.server.protocol.SnapshotCodec;
+import com.tankwar.server.protocol.SnapshotHistory;
 import com.tankwar.server.service.GameService;
+import com.tankwar.server.service.PlayerStatsWriter;
+import org.springframework.beans.factory.annotation.Value;
 import org.springframework.stereotype.Component;
 import org.springframework.web.socket.*;
 
+import javax.annotation.PreDestroy;
 import java.io.IOException;
-import java.time.LocalDateTime;
+import java.util.List;
 import java.util.Map;
 import java.util.concurrent.ConcurrentHashMap;
-import java.util.logging.Level;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.atomic.AtomicInteger;
 import java.util.logging.Logger;
+import java.util.stream.Collectors;
 
 /**
  * WebSocket处理器
@@ -22,31 +33,132 @@ import java.util.logging.Logger;
 public class TankWarWebSocketHandler implements WebSocketHandler {
 
     private static final Logger logger = Logger.getLogger(TankWarWebSocketHandler.class.getName());
+    // 会话属性：是否使用二进制快照、是否使用按键输入移动、子弹是否只通过事件同步，以及客户端最近确认的快照tick
+    private static final String ATTR_BINARY = "binarySnapshots";
+    private static final String ATTR_INPUT_MOVEMENT = "inputMovement";
+    private static final String ATTR_BULLET_EVENTS = "bulletEvents";
+    // 会话属性：兴趣区域过滤器，开启兴趣过滤时每个会话一个
+    private static final String ATTR_INTEREST = "interestFilter";
+    // 会话属性：带宽预算快照构建器，开启带宽预算时每个二进制会话一个
+    private static final String ATTR_BUDGET = "snapshotBudget";
+    private static final String ATTR_ACK_TICK = "ackTick";
     private final GameService gameService;
-    private final PlayerStatsRepository playerStatsRepository;
+    private final PlayerStatsWriter playerStatsWriter;
     private final ObjectMapper objectMapper;
-    private final ConcurrentHashMap<String, WebSocketSession> sessions = new ConcurrentHashMap<>();
+    // 每个会话的发送队列，所有出站消息都经由队列由写线程发送
+    private final ConcurrentHashMap<String, SessionOutbound> sessions = new ConcurrentHashMap<>();
+    private final ExecutorService writers;
+    private final int outboundMaxQueue;
+    private final long outboundSendTimeLimitMillis;
+    private final boolean coalesceSnapshots;
+    // 兴趣区域半径（0表示不过滤）、边界滞后距离，以及是否按障碍物遮挡裁剪
+    private final double interestRadius;
+    private final double interestHysteresis;
+    private final boolean lineOfSight;
+    // 每次快照更新的字节预算：是否开启、初始值、下限和上限
+    private final boolean bandwidthBudget;
+    private final int initialBudgetBytes;
+    private final int minBudgetBytes;
+    private final int maxBudgetBytes;
+    // 入站消息解码器，解码结果按线程复用
+    private final InboundDecoder inboundDecoder;
+    private final ThreadLocal<InboundDecoder.Input> inboundInput = ThreadLocal.withInitial(InboundDecoder.Input::new);
+    // 房间广播组，以及会话当前所在的广播组
+    private final ConcurrentHashMap<String, BroadcastGroup> roomGroups = new ConcurrentHashMap<>();
+    private final ConcurrentHashMap<String, String> sessionRooms = new ConcurrentHashMap<>();
+    // 每个房间最近发送的快照，作为增量帧的基线
+    private final ConcurrentHashMap<String, SnapshotHistory> snapshotHistories = new ConcurrentHashMap<>();
 
-    public TankWarWebSocketHandler(GameService gameService, ObjectMapper objectMapper, PlayerStatsRepository playerStatsRepository) {
+    public TankWarWebSocketHandler(GameService gameService, ObjectMapper objectMapper, PlayerStatsWriter playerStatsWriter,
+                                   @Value("${game.outbound.max-queue:64}") int outboundMaxQueue,
+                                   @Value("${game.outbound.send-time-limit-ms:5000}") long outboundSendTimeLimitMillis,
+                                   @Value("${game.outbound.coalesce-snapshots:true}") boolean coalesceSnapshots,
+                                   @Value("${game.interest.radius:0}") double interestRadius,
+                                   @Value("${game.interest.hysteresis:80}") double interestHysteresis,
+                                   @Value("${game.interest.line-of-sight:false}") boolean lineOfSight,
+                                   @Value("${game.bandwidth.enabled:false}") boolean bandwidthBudget,
+                                   @Value("${game.bandwidth.initial-bytes:1200}") int initialBudgetBytes,
+                                   @Value("${game.bandwidth.min-bytes:200}") int minBudgetBytes,
+                                   @Value("${game.bandwidth.max-bytes:8000}") int maxBudgetBytes) {
         this.gameService = gameService;
         this.objectMapper = objectMapper;
-        this.playerStatsRepository = playerStatsRepository;
+        this.playerStatsWriter = playerStatsWriter;
+        this.outboundMaxQueue = outboundMaxQueue;
+        this.outboundSendTimeLimitMillis = outboundSendTimeLimitMillis;
+        this.coalesceSnapshots = coalesceSnapshots;
+        this.interestRadius = interestRadius;
+        this.interestHysteresis = interestHysteresis;
+        this.lineOfSight = lineOfSight;
+        this.bandwidthBudget = bandwidthBudget;
+        this.initialBudgetBytes = initialBudgetBytes;
+        this.minBudgetBytes = minBudgetBytes;
+        this.maxBudgetBytes = maxBudgetBytes;
+        // 写线程按需创建，阻塞在慢客户端上的发送不会占用其他会话的线程
+        AtomicInteger writerIndex = new AtomicInteger();
+        this.writers = Executors.newCachedThreadPool(runnable -> {
+            Thread thread = new Thread(runnable, "ws-writer-" + writerIndex.incrementAndGet());
+            thread.setDaemon(true);
+            return thread;
+        });
+        this.inboundDecoder = new InboundDecoder(objectMapper.getFactory());
         // Ensure JavaTimeModule is registered in case auto-config not applied in websocket context
         this.objectMapper.registerModule(new JavaTimeModule());
     }
 
+    @PreDestroy
+    public void shutdown() {
+        writers.shutdown();
+    }
+
     @Override
     public void afterConnectionEstablished(WebSocketSession session) throws Exception {
         System.out.println("新连接建立: " + session.getId());
-        sessions.put(session.getId(), session);
+        sessions.put(session.getId(), new SessionOutbound(session, writers,
+                outboundMaxQueue, outboundSendTimeLimitMillis, coalesceSnapshots));
+    }
+
+    /**
+     * 获取所有会话的发送队列统计
+     */
+    public List<Map<String, Object>> getOutboundStats() {
+        return sessions.values().stream()
+                .map(outbound -> {
+                    Map<String, Object> stats = outbound.getStats();
+                    Object budget = outbound.getSession().getAttributes().get(ATTR_BUDGET);
+                    if (budget instanceof PrioritySnapshotBuilder) {
+                        stats.putAll(((PrioritySnapshotBuilder) budget).getStats());
+                    }
+                    return stats;
+                })
+                .collect(Collectors.toList());
     }
 
     @Override
     public void handleMessage(WebSocketSession session, WebSocketMessage<?> message) throws Exception {
         if (message instanceof TextMessage) {
             String payload = ((TextMessage) message).getPayload();
-            TankWarMessage wsMessage = objectMapper.readValue(payload, TankWarMessage.class);
-            handleClientMessage(session, wsMessage);
+            // 高频的移动、射击和确认消息流式解码，其余消息按原方式解析
+            InboundDecoder.Input input = inboundInput.get();
+            switch (inboundDecoder.decode(payload, input)) {
+                case MOVE:
+                    handlePlayerMove(session, input);
+                    break;
+                case INPUT:
+                    handlePlayerInput(session, input);
+                    break;
+                case SHOOT:
+                    handlePlayerShoot(session, input);
+                    break;
+                case ACK:
+                    handleSnapshotAck(session, input.getTick());
+                    break;
+                case OTHER:
+                    TankWarMessage wsMessage = objectMapper.readValue(payload, TankWarMessage.class);
+                    handleClientMessage(session, wsMessage);
+                    break;
+                case MALFORMED:
+                    break;
+            }
         }
     }
 
@@ -56,12 +168,6 @@ public class TankWarWebSocketHandler implements WebSocketHandler {
                 case "join":
                     handlePlayerJoin(session, message);
                     break;
-                case "move":
-                    handlePlayerMove(session, message);
-                    break;
-                case "shoot":
-                    handlePlayerShoot(session, message);
-                    break;
                 case "chat":
                     handleChatMessage(session, message);
                     break;
@@ -86,9 +192,7 @@ public class TankWarWebSocketHandler implements WebSocketHandler {
         if (player != null) {
             System.out.println("玩家复活: " + player.getName() + " (ID: " + player.getId() + ")");
             
-            // 向所有玩家广播游戏状态更新
-            broadcastGameState();
-            
+            // 复活位置由下一帧模拟确定，随后的快照会同步给房间内玩家
             // 向复活的玩家发送确认消息
             TankWarMessage respawnConfirm = new TankWarMessage("respawnConfirmed", player.getId());
             respawnConfirm.setPlayerId(player.getId());
@@ -96,14 +200,39 @@ public class TankWarWebSocketHandler implements WebSocketHandler {
         }
     }
 
+    /**
+     * 客户端确认已应用的快照tick，之后的快照以此为基线发送增量；负数表示基线丢失，请求完整帧
+     */
+    private void handleSnapshotAck(WebSocketSession session, long tick) {
+        Map<String, Object> attributes = session.getAttributes();
+        if (tick < 0) {
+            attributes.remove(ATTR_ACK_TICK);
+            return;
+        }
+        Object previous = attributes.get(ATTR_ACK_TICK);
+        if (!(previous instanceof Long) || (Long) previous < tick) {
+            attributes.put(ATTR_ACK_TICK, tick);
+        }
+    }
+
     private void handlePlayerJoin(WebSocketSession session, TankWarMessage message) {
-        // 从data中获取playerName
+        // 从data中获取playerName和可选的roomId
         String playerName = null;
+        String roomId = null;
+        String protocol = null;
+        String cachedMapId = null;
+        String movement = null;
+        String bullets = null;
         if (message.getData() instanceof String) {
             playerName = (String) message.getData();
         } else if (message.getData() instanceof Map) {
             Map<String, Object> data = (Map<String, Object>) message.getData();
             playerName = (String) data.get("playerName");
+            roomId = (String) data.get("roomId");
+            protocol = (String) data.get("protocol");
+            cachedMapId = (String) data.get("mapId");
+            movement = (String) data.get("movement");
+            bullets = (String) data.get("bullets");
         }
         
         if (playerName == null || playerName.trim().isEmpty()) {
@@ -111,65 +240,84 @@ public class TankWarWebSocketHandler implements WebSocketHandler {
             return;
         }
         
-        Player player = gameService.addPlayer(playerName, session.getId());
-        
+        Player player = gameService.addPlayer(playerName, session.getId(), roomId);
+
+        // 客户端在join中声明 protocol: "binary" 时改用二进制快照，否则保持JSON
+        if ("binary".equals(protocol)) {
+            session.getAttributes().put(ATTR_BINARY, Boolean.TRUE);
+        }
+        // 声明 movement: "input" 时改为发送按键状态，由服务端积分移动；否则沿用上报坐标
+        if ("input".equals(movement)) {
+            session.getAttributes().put(ATTR_INPUT_MOVEMENT, Boolean.TRUE);
+        }
+        // 声明 bullets: "events" 时快照不再包含子弹，由 bulletCreated/bulletRemoved 事件同步
+        if ("events".equals(bullets)) {
+            session.getAttributes().put(ATTR_BULLET_EVENTS, Boolean.TRUE);
+        }
+        if (interestRadius > 0 || lineOfSight) {
+            session.getAttributes().put(ATTR_INTEREST,
+                    new InterestFilter(player.getId(), interestRadius, interestHysteresis, lineOfSight));
+        }
+        // 带宽预算依赖增量帧沿用基线状态，只对二进制会话生效
+        if (bandwidthBudget && "binary".equals(protocol)) {
+            session.getAttributes().put(ATTR_BUDGET,
+                    new PrioritySnapshotBuilder(player.getId(), initialBudgetBytes, minBudgetBytes, maxBudgetBytes));
+        }
+
         // 发送玩家ID（同时设置到 data 与 playerId 字段，兼容前端读取）
         TankWarMessage response = new TankWarMessage("playerId", player.getId());
         response.setPlayerId(player.getId());
         response.setPlayerName(player.getName());
         sendMessage(session, response);
         
-        // 通知其他玩家（显式带上玩家名与ID，便于前端显示/更新列表）
+        // 通知同房间的其他玩家（显式带上玩家名与ID，便于前端显示/更新列表）
+        String joinedRoomId = gameService.getSessionRoomId(session.getId());
         TankWarMessage joinNotification = new TankWarMessage("playerJoined", player.getName());
         joinNotification.setPlayerName(player.getName());
         joinNotification.setPlayerId(player.getId());
-        broadcastMessage(joinNotification, session.getId());
+        broadcastToRoom(joinedRoomId, joinNotification, session.getId());
         
-        // 发送当前游戏状态
+        // 发送静态地图层（客户端已缓存时只发送受损情况）和当前游戏状态
+        Map<String, Object> mapData = gameService.getMapData(joinedRoomId, cachedMapId);
+        if (mapData != null) {
+            sendMessage(session, new TankWarMessage("mapData", mapData));
+        }
         sendGameState(session);
+
+        // 初始状态入队后再加入广播组，之后的房间消息都排在它们之后
+        joinGroup(joinedRoomId, session.getId());
         
         System.out.println("玩家 " + playerName + " 加入游戏，ID: " + player.getId());
     }
 
-    private void handlePlayerMove(WebSocketSession session, TankWarMessage message) {
-        String playerId = message.getPlayerId();
-        if (playerId == null) return;
+    private void handlePlayerMove(WebSocketSession session, InboundDecoder.Input input) {
+        String playerId = gameService.getPlayerIdBySession(session.getId());
+        if (playerId == null || isInputMovement(session)) return;
         
-        // 解析移动数据
-        Map<String, Object> moveData = (Map<String, Object>) message.getData();
-        if (moveData == null) return;
-        
-        double x = ((Number) moveData.get("x")).doubleValue();
-        double y = ((Number) moveData.get("y")).doubleValue();
-        int direction = ((Number) moveData.get("direction")).intValue();
-        
-        gameService.updatePlayerPosition(playerId, x, y, direction);
-        
-        // 广播位置更新
-        TankWarMessage positionUpdate = new TankWarMessage("positionUpdate", moveData);
-        positionUpdate.setPlayerId(playerId);
-        broadcastMessage(positionUpdate);
+        // 位置更新由房间模拟线程在本帧事件中合并广播
+        gameService.updatePlayerPosition(playerId, input.getX(), input.getY(), input.getDirection());
     }
 
-    private void handlePlayerShoot(WebSocketSession session, TankWarMessage message) {
-        String playerId = message.getPlayerId();
+    /**
+     * 按键输入模式：记录按键状态，快照中的 inputSeq 确认已处理的序号
+     */
+    private void handlePlayerInput(WebSocketSession session, InboundDecoder.Input input) {
+        String playerId = gameService.getPlayerIdBySession(session.getId());
+        if (playerId == null || !isInputMovement(session)) return;
+
+        gameService.submitInput(playerId, input.getSequence(), input.getKeys());
+    }
+
+    private boolean isInputMovement(WebSocketSession session) {
+        return Boolean.TRUE.equals(session.getAttributes().get(ATTR_INPUT_MOVEMENT));
+    }
+
+    private void handlePlayerShoot(WebSocketSession session, InboundDecoder.Input input) {
+        String playerId = gameService.getPlayerIdBySession(session.getId());
         if (playerId == null) return;
         
-        // 解析射击数据
-        Map<String, Object> shootData = (Map<String, Object>) message.getData();
-        if (shootData == null) return;
-        
-        double x = ((Number) shootData.get("x")).doubleValue();
-        double y = ((Number) shootData.get("y")).doubleValue();
-        int direction = ((Number) shootData.get("direction")).intValue();
-        
-        Bullet bullet = gameService.createBullet(playerId, x, y, direction);
-        
-        if (bullet != null) {
-            // 广播子弹创建
-            TankWarMessage bulletMessage = new TankWarMessage("bulletCreated", bullet);
-            broadcastMessage(bulletMessage);
-        }
+        // 子弹由房间模拟线程创建，创建后通过房间事件广播
+        gameService.createBullet(playerId, input.getX(), input.getY(), input.getDirection());
     }
 
     private void handleChatMessage(WebSocketSession session, TankWarMessage message) {
@@ -178,30 +326,69 @@ public class TankWarWebSocketHandler implements WebSocketHandler {
         String text = message.getText();
         
         if (playerId != null && text != null && !text.trim().isEmpty()) {
-            // 广播聊天消息
+            // 向同房间玩家广播聊天消息
             TankWarMessage chatMessage = new TankWarMessage("chatMessage", playerId, playerName, text);
-            broadcastMessage(chatMessage);
+            broadcastToRoom(sessionRooms.get(session.getId()), chatMessage, null);
         }
     }
 
     private void handlePlayerDisconnect(WebSocketSession session) {
         String sessionId = session.getId();
+        String roomId = leaveGroup(sessionId);
         Player player = gameService.removePlayer(sessionId);
         
         if (player != null) {
-            // 保存玩家分数到数据库
-            savePlayerScoreToDatabase(player);
+            // 保存玩家分数，由写入器在后台批量写入数据库
+            playerStatsWriter.save(player);
             
             // 通知其他玩家（显式带上玩家名与ID）
             TankWarMessage leaveNotification = new TankWarMessage("playerLeft", player.getName());
             leaveNotification.setPlayerName(player.getName());
             leaveNotification.setPlayerId(player.getId());
-            broadcastMessage(leaveNotification, sessionId);
+            broadcastToRoom(roomId, leaveNotification, sessionId);
             
             System.out.println("玩家 " + player.getName() + " 离开游戏");
         }
         
-        sessions.remove(sessionId);
+        closeOutbound(sessionId);
+    }
+
+    /**
+     * 会话加入房间广播组
+     */
+    private void joinGroup(String roomId, String sessionId) {
+        SessionOutbound outbound = sessions.get(sessionId);
+        if (roomId == null || outbound == null) return;
+        leaveGroup(sessionId);
+        roomGroups.compute(roomId, (id, group) -> {
+            if (group == null) {
+                group = new BroadcastGroup(id);
+            }
+            group.add(outbound);
+            return group;
+        });
+        sessionRooms.put(sessionId, roomId);
+    }
+
+    /**
+     * 会话离开所在的广播组，组内无成员时移除该组；返回原房间ID
+     */
+    private String leaveGroup(String sessionId) {
+        String roomId = sessionRooms.remove(sessionId);
+        if (roomId != null) {
+            roomGroups.computeIfPresent(roomId, (id, group) -> {
+                group.remove(sessionId);
+                return group.isEmpty() ? null : group;
+            });
+        }
+        return roomId;
+    }
+
+    private void closeOutbound(String sessionId) {
+        SessionOutbound outbound = sessions.remove(sessionId);
+        if (outbound != null) {
+            outbound.close();
+        }
     }
 
     @Override
@@ -214,49 +401,24 @@ public class TankWarWebSocketHandler implements WebSocketHandler {
     public void afterConnectionClosed(WebSocketSession session, CloseStatus closeStatus) throws Exception {
         logger.info("连接关闭: " + session.getId() + ", 状态: " + closeStatus);
         String sessionId = session.getId();
+        String roomId = leaveGroup(sessionId);
         
         // 移除玩家
         Player player = gameService.removePlayer(sessionId);
         if (player != null) {
             logger.info("玩家离开游戏: " + player.getName());
             
-            // 保存玩家分数到数据库
-            savePlayerScoreToDatabase(player);
+            // 保存玩家分数，由写入器在后台批量写入数据库
+            playerStatsWriter.save(player);
             
             // 通知其他玩家（显式带上玩家名与ID）
             TankWarMessage leaveNotification = new TankWarMessage("playerLeft", player.getName());
             leaveNotification.setPlayerName(player.getName());
             leaveNotification.setPlayerId(player.getId());
-            broadcastMessage(leaveNotification, sessionId);
-            
-            sessions.remove(sessionId);
-            // 更新游戏状态
-            broadcastGameState();
-        }
-    }
-    
-    /**
-     * 保存玩家分数到数据库
-     */
-    private void savePlayerScoreToDatabase(Player player) {
-        try {
-            PlayerStats stats = playerStatsRepository.findByPlayerName(player.getName());
-            
-            if (stats == null) {
-                stats = new PlayerStats(player.getName());
-            }
-            
-            // 更新数据库中的总分数为当前玩家的分数
-            stats.setTotalScore(player.getScore());
-            stats.setTotalKills(player.getKills());
-            stats.setTotalDeaths(player.getDeaths());
-            stats.setLastPlayTime(LocalDateTime.now());
-            
-            playerStatsRepository.save(stats);
-            logger.info("保存玩家 " + player.getName() + " 的分数到数据库: " + player.getScore());
-        } catch (Exception e) {
-            logger.log(Level.SEVERE, "保存玩家分数到数据库失败: " + e.getMessage(), e);
+            broadcastToRoom(roomId, leaveNotification, sessionId);
+            // 玩家的移除由下一次定时快照带给其他客户端
         }
+        closeOutbound(sessionId);
     }
 
     @Override
@@ -265,48 +427,222 @@ public class TankWarWebSocketHandler implements WebSocketHandler {
     }
 
     private void sendMessage(WebSocketSession session, TankWarMessage message) {
+        SessionOutbound outbound = sessions.get(session.getId());
+        if (outbound == null) return;
         try {
             String json = objectMapper.writeValueAsString(message);
-            session.sendMessage(new TextMessage(json));
+            outbound.send(new TextMessage(json));
         } catch (IOException e) {
             System.err.println("发送消息失败: " + e.getMessage());
         }
     }
 
-    private void broadcastMessage(TankWarMessage message) {
-        broadcastMessage(message, null);
+    private void sendGameState(WebSocketSession session) {
+        String roomId = gameService.getSessionRoomId(session.getId());
+        WorldSnapshot gameState = gameService.getGameState(roomId);
+        if (gameState == null) return;
+        // 新加入的会话没有基线，发送完整帧
+        session.getAttributes().remove(ATTR_ACK_TICK);
+        SessionOutbound outbound = sessions.get(session.getId());
+        if (outbound != null) {
+            sendSnapshot(outbound, new SnapshotFrames(gameState, historyOf(roomId)));
+        }
+    }
+
+    /**
+     * 向房间内的会话广播消息
+     */
+    public void broadcastToRoom(String roomId, TankWarMessage message) {
+        broadcastToRoom(roomId, message, null);
+    }
+
+    /**
+     * 广播房间每帧合并的事件：未开启兴趣过滤的会话共用同一份序列化结果，
+     * 开启兴趣过滤的会话只收到来源在其视野内的事件，与快照的裁剪规则一致
+     */
+    @SuppressWarnings("unchecked")
+    public void broadcastEvents(String roomId, TankWarMessage batch) {
+        BroadcastGroup group = roomId != null ? roomGroups.get(roomId) : null;
+        if (group == null) return;
+        List<TankWarMessage> events = (List<TankWarMessage>) batch.getData();
+        WorldSnapshot snapshot = gameService.getGameState(roomId);
+        TextMessage shared = toTextMessage(batch);
+        group.forEach(outbound -> {
+            InterestFilter interest = (InterestFilter) outbound.getSession().getAttributes().get(ATTR_INTEREST);
+            if (interest == null || snapshot == null) {
+                if (shared != null) {
+                    outbound.send(shared);
+                }
+                return;
+            }
+            List<TankWarMessage> visible = interest.filterEvents(snapshot, events);
+            if (visible.size() == events.size() && visible.equals(events)) {
+                if (shared != null) {
+                    outbound.send(shared);
+                }
+            } else if (!visible.isEmpty()) {
+                TextMessage filtered = toTextMessage(new TankWarMessage("events", visible));
+                if (filtered != null) {
+                    outbound.send(filtered);
+                }
+            }
+        });
+    }
+
+    private TextMessage toTextMessage(TankWarMessage message) {
+        try {
+            return new TextMessage(objectMapper.writeValueAsString(message));
+        } catch (Exception e) {
+            System.err.println("序列化消息失败: " + e.getMessage());
+            return null;
+        }
     }
 
-    private void broadcastMessage(TankWarMessage message, String excludeSessionId) {
-        String json;
+    /**
+     * 向房间广播组广播消息，消息只序列化一次；excludeSessionId 不为空时跳过该会话
+     */
+    private void broadcastToRoom(String roomId, TankWarMessage message, String excludeSessionId) {
+        BroadcastGroup group = roomId != null ? roomGroups.get(roomId) : null;
+        if (group == null) return;
         try {
-            json = objectMapper.writeValueAsString(message);
+            group.send(new TextMessage(objectMapper.writeValueAsString(message)), excludeSessionId);
         } catch (Exception e) {
             System.err.println("序列化消息失败: " + e.getMessage());
+        }
+    }
+
+    /**
+     * 向房间内的会话广播该房间的游戏状态，相同编码（含相同基线的增量）只序列化一次
+     */
+    public void broadcastGameState(String roomId) {
+        WorldSnapshot gameState = gameService.getGameState(roomId);
+        if (gameState == null) {
+            snapshotHistories.remove(roomId);
             return;
         }
 
-        sessions.values().parallelStream()
-                .filter(session -> !session.getId().equals(excludeSessionId))
-                .filter(WebSocketSession::isOpen)
-                .forEach(session -> {
-                    try {
-                        session.sendMessage(new TextMessage(json));
-                    } catch (IOException e) {
-                        System.err.println("广播消息失败: " + e.getMessage());
-                    }
-                });
+        // 房间内没有在线会话时不编码快照
+        BroadcastGroup group = roomGroups.get(roomId);
+        if (group == null) return;
+        SnapshotFrames frames = new SnapshotFrames(gameState, historyOf(roomId));
+        group.forEach(outbound -> sendSnapshot(outbound, frames));
     }
 
-    private void sendGameState(WebSocketSession session) {
-        GameState gameState = gameService.getGameState();
-        TankWarMessage message = new TankWarMessage("gameState", gameState);
-        sendMessage(session, message);
+    private SnapshotHistory historyOf(String roomId) {
+        return snapshotHistories.computeIfAbsent(roomId, id -> new SnapshotHistory());
+    }
+
+    /**
+     * 按会话协商的协议发送快照；二进制会话以最近确认的快照为基线发送增量，基线不可用时发送完整帧
+     */
+    private void sendSnapshot(SessionOutbound outbound, SnapshotFrames frames) {
+        Map<String, Object> attributes = outbound.getSession().getAttributes();
+        boolean includeBullets = !Boolean.TRUE.equals(attributes.get(ATTR_BULLET_EVENTS));
+        boolean binary = Boolean.TRUE.equals(attributes.get(ATTR_BINARY));
+        Object ackTick = attributes.get(ATTR_ACK_TICK);
+        long ack = ackTick instanceof Long ? (Long) ackTick : -1;
+
+        InterestFilter interest = (InterestFilter) attributes.get(ATTR_INTEREST);
+        if (interest != null) {
+            // 没有事件的帧不会经过事件过滤，进入视野的子弹在快照之前补发
+            List<TankWarMessage> revealed = interest.revealBullets(frames.snapshot);
+            if (!revealed.isEmpty()) {
+                TextMessage events = toTextMessage(new TankWarMessage("events", revealed));
+                if (events != null) {
+                    outbound.send(events);
+                }
+            }
+        }
+        PrioritySnapshotBuilder budget = (PrioritySnapshotBuilder) attributes.get(ATTR_BUDGET);
+        if (budget != null) {
+            WorldSnapshot source = interest != null ? interest.apply(frames.snapshot) : frames.snapshot;
+            sendBudgetedSnapshot(outbound, includeBullets ? source : source.withoutBullets(), budget, ack, includeBullets);
+            return;
+        }
+        if (interest != null) {
+            sendFilteredSnapshot(outbound, interest.apply(frames.snapshot), interest, binary, ack, includeBullets);
+            return;
+        }
+        if (!binary) {
+            TextMessage json = frames.json(includeBullets);
+            if (json != null) {
+                outbound.sendSnapshot(json);
+            }
+            return;
+        }
+        outbound.sendSnapshot(frames.binary(ack, includeBullets));
+    }
+
+    /**
+     * 按会话的字节预算挑选本帧写入的实体，预算先按发送队列自上次以来的消耗调整
+     */
+    private void sendBudgetedSnapshot(SessionOutbound outbound, WorldSnapshot source, PrioritySnapshotBuilder budget,
+                                      long ack, boolean includeBullets) {
+        budget.adapt(outbound.getBytesSent(), outbound.isBacklogged());
+        WorldSnapshot built = budget.build(source, ack);
+        outbound.sendSnapshot(new BinaryMessage(SnapshotCodec.encode(built, budget.baseline(ack), includeBullets)));
+    }
+
+    /**
+     * 兴趣过滤后的快照各会话不同，单独编码，增量帧的基线取自该会话自己的过滤历史
+     */
+    private void sendFilteredSnapshot(SessionOutbound outbound, WorldSnapshot filtered, InterestFilter interest,
+                                      boolean binary, long ack, boolean includeBullets) {
+        if (binary) {
+            outbound.sendSnapshot(new BinaryMessage(SnapshotCodec.encode(filtered, interest.baseline(ack), includeBullets)));
+            return;
+        }
+        try {
+            WorldSnapshot state = includeBullets ? filtered : filtered.withoutBullets();
+            outbound.sendSnapshot(new TextMessage(objectMapper.writeValueAsString(new TankWarMessage("gameState", state))));
+        } catch (Exception e) {
+            System.err.println("序列化消息失败: " + e.getMessage());
+        }
     }
 
-    public void broadcastGameState() {
-        GameState gameState = gameService.getGameState();
-        TankWarMessage message = new TankWarMessage("gameState", gameState);
-        broadcastMessage(message);
+    /**
+     * 一次广播内按需生成并复用的快照编码：JSON、完整帧，以及按基线tick区分的增量帧，各自分含/不含子弹两种
+     */
+    private class SnapshotFrames {
+        private final WorldSnapshot snapshot;
+        private final SnapshotHistory history;
+        private final Map<Long, BinaryMessage> binary = new ConcurrentHashMap<>();
+        private TextMessage json;
+        private TextMessage jsonWithoutBullets;
+
+        private SnapshotFrames(WorldSnapshot snapshot, SnapshotHistory history) {
+            this.snapshot = snapshot;
+            this.history = history;
+            history.add(snapshot);
+        }
+
+        TextMessage json(boolean includeBullets) {
+            if (includeBullets) {
+                if (json == null) {
+                    json = toJson(snapshot);
+                }
+                return json;
+            }
+            if (jsonWithoutBullets == null) {
+                jsonWithoutBullets = toJson(snapshot.withoutBullets());
+            }
+            return jsonWithoutBullets;
+        }
+
+        private TextMessage toJson(WorldSnapshot state) {
+            try {
+                return new TextMessage(objectMapper.writeValueAsString(new TankWarMessage("gameState", state)));
+            } catch (Exception e) {
+                System.err.println("序列化消息失败: " + e.getMessage());
+                return null;
+            }
+        }
+
+        BinaryMessage binary(long baselineTick, boolean includeBullets) {
+            WorldSnapshot baseline = baselineTick >= 0 ? history.get(baselineTick) : null;
+            long key = ((baseline != null ? baseline.getTick() : -1) << 1) | (includeBullets ? 0 : 1);
+            return binary.computeIfAbsent(key,
+                    k -> new BinaryMessage(SnapshotCodec.encode(snapshot, baseline, includeBullets)));
+        }
     }
 }
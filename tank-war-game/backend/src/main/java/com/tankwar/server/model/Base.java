@@ -1,13 +1,13 @@
 package com.tankwar.server.model;
 
 import java.time.LocalDateTime;
-import java.util.UUID;
 
 /**
  * 基地实体类
  */
 public class Base {
-    private String id;
+    // 基地在所属地图中的序号
+    private int id;
     private String teamId;
     private String teamName;
     private double x;
@@ -21,7 +21,6 @@ public class Base {
     private LocalDateTime createTime;
 
     public Base() {
-        this.id = UUID.randomUUID().toString();
         this.maxHealth = 1000;
         this.health = maxHealth;
         this.destroyed = false;
@@ -64,8 +63,8 @@ public class Base {
     }
 
     // Getters and Setters
-    public String getId() { return id; }
-    public void setId(String id) { this.id = id; }
+    public int getId() { return id; }
+    public void setId(int id) { this.id = id; }
 
     public String getTeamId() { return teamId; }
     public void setTeamId(String teamId) { this.teamId = teamId; }
@@ -1,13 +1,16 @@
 package com.tankwar.server.model;
 
 import java.time.LocalDateTime;
-import java.util.UUID;
+import java.util.concurrent.atomic.AtomicLong;
 
 /**
  * 聊天消息实体类
  */
 public class ChatMessage {
-    private String id;
+    // 聊天消息只需在进程内区分先后，使用自增序号
+    private static final AtomicLong SEQUENCE = new AtomicLong();
+
+    private long id;
     private String playerId;
     private String playerName;
     private String content;
@@ -16,7 +19,7 @@ public class ChatMessage {
     private String roomId;
 
     public ChatMessage() {
-        this.id = UUID.randomUUID().toString();
+        this.id = SEQUENCE.incrementAndGet();
         this.timestamp = LocalDateTime.now();
         this.type = "normal";
     }
@@ -39,8 +42,8 @@ public class ChatMessage {
     }
 
     // Getters and Setters
-    public String getId() { return id; }
-    public void setId(String id) { this.id = id; }
+    public long getId() { return id; }
+    public void setId(long id) { this.id = id; }
 
     public String getPlayerId() { return playerId; }
     public void setPlayerId(String playerId) { this.playerId = playerId; }
@@ -3,8 +3,8 @@ package com.tankwar.server.model;
 import java.time.LocalDateTime;
 import java.util.UUID;
 import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CopyOnWriteArrayList;
 import java.util.List;
-import java.util.ArrayList;
 
 /**
  * 游戏房间实体类
@@ -20,8 +20,9 @@ public class GameRoom {
     private ConcurrentHashMap<String, Player> players;
     private List<Obstacle> obstacles;
     private List<PowerUp> powerUps;
-    private List<Bullet> bullets;
     private String mapType;
+    // 地图版本，每次重新生成或替换障碍物时递增
+    private volatile int mapVersion;
     private int mapWidth;
     private int mapHeight;
 
@@ -32,9 +33,8 @@ public class GameRoom {
         this.status = "waiting";
         this.createTime = LocalDateTime.now();
         this.players = new ConcurrentHashMap<>();
-        this.obstacles = new ArrayList<>();
-        this.powerUps = new ArrayList<>();
-        this.bullets = new ArrayList<>();
+        this.obstacles = new CopyOnWriteArrayList<>();
+        this.powerUps = new CopyOnWriteArrayList<>();
         this.mapType = "classic";
         this.mapWidth = 800;
         this.mapHeight = 600;
@@ -46,7 +46,7 @@ public class GameRoom {
         this.maxPlayers = maxPlayers;
     }
 
-    public boolean addPlayer(Player player) {
+    public synchronized boolean addPlayer(Player player) {
         if (currentPlayers >= maxPlayers || !"waiting".equals(status)) {
             return false;
         }
@@ -62,7 +62,7 @@ public class GameRoom {
         return true;
     }
 
-    public Player removePlayer(String playerId) {
+    public synchronized Player removePlayer(String playerId) {
         Player player = players.remove(playerId);
         if (player != null) {
             currentPlayers--;
@@ -78,17 +78,21 @@ public class GameRoom {
     public void startGame() {
         this.status = "playing";
         this.startTime = LocalDateTime.now();
-        generateMap();
+        // 地图在房间创建时已生成，这里只补全未生成的情况
+        if (obstacles.isEmpty()) {
+            generateMap();
+        }
     }
 
     public void endGame() {
         this.status = "finished";
     }
 
-    private void generateMap() {
+    public void generateMap() {
         // 生成地图障碍物和道具
         generateObstacles();
         generatePowerUps();
+        mapVersion++;
     }
 
     private void generateObstacles() {
@@ -172,14 +176,13 @@ public class GameRoom {
     public void setPlayers(ConcurrentHashMap<String, Player> players) { this.players = players; }
 
     public List<Obstacle> getObstacles() { return obstacles; }
-    public void setObstacles(List<Obstacle> obstacles) { this.obstacles = obstacles; }
+    public void setObstacles(List<Obstacle> obstacles) { this.obstacles = obstacles; mapVersion++; }
+
+    public int getMapVersion() { return mapVersion; }
 
     public List<PowerUp> getPowerUps() { return powerUps; }
     public void setPowerUps(List<PowerUp> powerUps) { this.powerUps = powerUps; }
 
-    public List<Bullet> getBullets() { return bullets; }
-    public void setBullets(List<Bullet> bullets) { this.bullets = bullets; }
-
     public String getMapType() { return mapType; }
     public void setMapType(String mapType) { this.mapType = mapType; }
 
@@ -8,6 +8,8 @@ import java.util.UUID;
  */
 public class Player {
     private String id;
+    // 房间内的实体句柄，由房间引擎在出生时分配，不在房间中时为-1
+    private int handle = -1;
     private String name;
     private double x;
     private double y;
@@ -59,6 +61,9 @@ public class Player {
     public String getId() { return id; }
     public void setId(String id) { this.id = id; }
 
+    public int getHandle() { return handle; }
+    public void setHandle(int handle) { this.handle = handle; }
+
     public String getName() { return name; }
     public void setName(String name) { this.name = name; }
 
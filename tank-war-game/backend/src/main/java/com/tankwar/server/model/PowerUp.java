@@ -1,13 +1,13 @@
 package com.tankwar.server.model;
 
 import java.time.LocalDateTime;
-import java.util.UUID;
 
 /**
  * 道具实体类
  */
 public class PowerUp {
-    private String id;
+    // 房间内的实体句柄，由房间引擎分配，尚未加入房间时为-1
+    private int id = -1;
     private double x;
     private double y;
     private String type; // speed, damage, health, shield
@@ -18,7 +18,6 @@ public class PowerUp {
     private int duration; // 持续时间(秒)
 
     public PowerUp() {
-        this.id = UUID.randomUUID().toString();
         this.radius = 8;
         this.active = true;
         this.createTime = LocalDateTime.now();
@@ -48,8 +47,8 @@ public class PowerUp {
     }
 
     // Getters and Setters
-    public String getId() { return id; }
-    public void setId(String id) { this.id = id; }
+    public int getId() { return id; }
+    public void setId(int id) { this.id = id; }
 
     public double getX() { return x; }
     public void setX(double x) { this.x = x; }
@@ -0,0 +1,208 @@
+package com.tankwar.server.protocol;
+
+import com.fasterxml.jackson.core.JsonFactory;
+import com.fasterxml.jackson.core.JsonParser;
+import com.fasterxml.jackson.core.JsonToken;
+
+import java.io.IOException;
+
+/**
+ * 客户端高频消息的流式解码
+ *
+ * move、input、shoot 和 ack 占入站消息的绝大部分，这里用 JsonParser 单遍读取，
+ * 坐标、方向和按键直接写入可复用的 {@link Input}，不经过 Map 和装箱数值；类型字段直接比较字符，不创建字符串。
+ * 玩家由会话确定，消息中的 playerId 不读取。
+ * 其他类型返回 {@link Result#OTHER}，由调用方按原方式解析为 TankWarMessage。
+ * 字段缺失、类型不符、方向或按键越界的消息返回 {@link Result#MALFORMED}，直接丢弃；
+ * data 先于 type 出现时，其中的字段错误只在类型确定为高频消息后才判为 MALFORMED，低频消息仍返回 OTHER。
+ */
+public final class InboundDecoder {
+
+    public enum Result { MOVE, INPUT, SHOOT, ACK, OTHER, MALFORMED }
+
+    // data 中已读到的字段
+    private static final int HAS_X = 1;
+    private static final int HAS_Y = 1 << 1;
+    private static final int HAS_DIRECTION = 1 << 2;
+    private static final int HAS_SEQ = 1 << 3;
+    private static final int HAS_KEYS = 1 << 4;
+    private static final int HAS_POSITION = HAS_X | HAS_Y | HAS_DIRECTION;
+    private static final int HAS_INPUT = HAS_SEQ | HAS_KEYS;
+    private static final int MAX_KEYS = 0x0F;
+
+    private final JsonFactory factory;
+
+    public InboundDecoder(JsonFactory factory) {
+        this.factory = factory;
+    }
+
+    /**
+     * 解码到 input，返回消息类别；input 只在返回 MOVE、INPUT、SHOOT、ACK 时有效
+     */
+    public Result decode(String payload, Input input) {
+        input.reset();
+        try (JsonParser parser = factory.createParser(payload)) {
+            if (parser.nextToken() != JsonToken.START_OBJECT) {
+                return Result.MALFORMED;
+            }
+            Result type = null;
+            int fields = 0;
+            boolean numericData = false;
+            boolean invalidData = false;
+            JsonToken token;
+            while ((token = parser.nextToken()) == JsonToken.FIELD_NAME) {
+                String name = parser.getCurrentName();
+                JsonToken value = parser.nextToken();
+                if ("type".equals(name)) {
+                    if (value != JsonToken.VALUE_STRING) {
+                        return Result.MALFORMED;
+                    }
+                    type = typeOf(parser);
+                    // 低频消息交给调用方完整解析，不再继续读取
+                    if (type == Result.OTHER) {
+                        return Result.OTHER;
+                    }
+                } else if ("data".equals(name)) {
+                    if (value == JsonToken.START_OBJECT) {
+                        fields = readData(parser, input);
+                        if (fields < 0) {
+                            if (type != null) {
+                                return Result.MALFORMED;
+                            }
+                            // 类型未知，跳过 data 的剩余部分，等读到 type 再决定
+                            skipRest(parser);
+                            invalidData = true;
+                        }
+                    } else if (value == JsonToken.VALUE_NUMBER_INT) {
+                        input.tick = parser.getLongValue();
+                        numericData = true;
+                    } else {
+                        parser.skipChildren();
+                    }
+                } else {
+                    parser.skipChildren();
+                }
+            }
+            if (token != JsonToken.END_OBJECT || type == null || invalidData) {
+                return Result.MALFORMED;
+            }
+            if (type == Result.ACK) {
+                return numericData ? Result.ACK : Result.MALFORMED;
+            }
+            if (type == Result.INPUT) {
+                return (fields & HAS_INPUT) == HAS_INPUT ? Result.INPUT : Result.MALFORMED;
+            }
+            return (fields & HAS_POSITION) == HAS_POSITION ? type : Result.MALFORMED;
+        } catch (IOException | RuntimeException e) {
+            return Result.MALFORMED;
+        }
+    }
+
+    private static Result typeOf(JsonParser parser) throws IOException {
+        char[] chars = parser.getTextCharacters();
+        int offset = parser.getTextOffset();
+        int length = parser.getTextLength();
+        if (matches(chars, offset, length, "move")) return Result.MOVE;
+        if (matches(chars, offset, length, "input")) return Result.INPUT;
+        if (matches(chars, offset, length, "shoot")) return Result.SHOOT;
+        if (matches(chars, offset, length, "ack")) return Result.ACK;
+        return Result.OTHER;
+    }
+
+    private static boolean matches(char[] chars, int offset, int length, String expected) {
+        if (length != expected.length()) {
+            return false;
+        }
+        for (int i = 0; i < length; i++) {
+            if (chars[offset + i] != expected.charAt(i)) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    /**
+     * readData 提前返回后，跳过当前值及所在对象的其余字段
+     */
+    private static void skipRest(JsonParser parser) throws IOException {
+        parser.skipChildren();
+        while (parser.nextToken() == JsonToken.FIELD_NAME) {
+            parser.nextToken();
+            parser.skipChildren();
+        }
+    }
+
+    /**
+     * 读取 data 对象中的 x、y、direction、seq、keys，返回已读字段位；类型不符或越界时返回 -1
+     */
+    private static int readData(JsonParser parser, Input input) throws IOException {
+        int fields = 0;
+        while (parser.nextToken() == JsonToken.FIELD_NAME) {
+            String name = parser.getCurrentName();
+            JsonToken value = parser.nextToken();
+            boolean number = value == JsonToken.VALUE_NUMBER_INT || value == JsonToken.VALUE_NUMBER_FLOAT;
+            if ("x".equals(name)) {
+                if (!number) return -1;
+                input.x = parser.getDoubleValue();
+                fields |= HAS_X;
+            } else if ("y".equals(name)) {
+                if (!number) return -1;
+                input.y = parser.getDoubleValue();
+                fields |= HAS_Y;
+            } else if ("direction".equals(name)) {
+                if (!isInt(parser, value)) return -1;
+                input.direction = parser.getIntValue();
+                if (input.direction < 0 || input.direction > 3) return -1;
+                fields |= HAS_DIRECTION;
+            } else if ("seq".equals(name)) {
+                if (!isInt(parser, value)) return -1;
+                input.sequence = parser.getIntValue();
+                if (input.sequence < 0) return -1;
+                fields |= HAS_SEQ;
+            } else if ("keys".equals(name)) {
+                if (!isInt(parser, value)) return -1;
+                input.keys = parser.getIntValue();
+                if (input.keys < 0 || input.keys > MAX_KEYS) return -1;
+                fields |= HAS_KEYS;
+            } else {
+                parser.skipChildren();
+            }
+        }
+        return fields;
+    }
+
+    /**
+     * 是否为 int 范围内的整数，超出范围的整数按类型不符处理，避免 getIntValue 抛出异常
+     */
+    private static boolean isInt(JsonParser parser, JsonToken value) throws IOException {
+        return value == JsonToken.VALUE_NUMBER_INT && parser.getNumberType() == JsonParser.NumberType.INT;
+    }
+
+    /**
+     * 解码结果，每个线程复用一个实例
+     */
+    public static final class Input {
+        private double x;
+        private double y;
+        private int direction;
+        private int sequence;
+        private int keys;
+        private long tick;
+
+        private void reset() {
+            x = 0;
+            y = 0;
+            direction = 0;
+            sequence = 0;
+            keys = 0;
+            tick = 0;
+        }
+
+        public double getX() { return x; }
+        public double getY() { return y; }
+        public int getDirection() { return direction; }
+        public int getSequence() { return sequence; }
+        public int getKeys() { return keys; }
+        public long getTick() { return tick; }
+    }
+}
@@ -0,0 +1,229 @@
+package com.tankwar.server.protocol;
+
+import com.tankwar.server.engine.WorldSnapshot;
+import com.tankwar.server.model.TankWarMessage;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.function.Consumer;
+
+/**
+ * 单个会话的兴趣区域过滤
+ *
+ * 只保留以自己坦克为中心、半径 radius 内的玩家和子弹；已可见的实体直到超出 radius + hysteresis 才移除，
+ * 避免在边界附近反复出现和消失。查询使用快照的空间网格，开销与附近实体数量相关，与世界大小无关。
+ * 过滤后的快照各会话不同，因此每个会话保存自己的快照历史作为增量帧的基线；
+ * 可见玩家集合变化时名单版本递增，使新进入视野的玩家随名单一起下发。
+ * 开启视线裁剪时，敌方坦克和子弹还需与自己坦克之间没有障碍物遮挡才下发，自己和自己的子弹始终可见；
+ * radius 不大于0表示不限距离，只按视线裁剪。
+ * 每帧的事件按同样的规则过滤：看不见的玩家的位置更新不下发；子弹创建事件在子弹进入视野前暂不下发，
+ * 进入视野时按当前位置和tick补发，不暴露发射位置；客户端不知道的子弹，其移除事件也不下发。
+ * 没有事件的帧（如输入驱动的移动）由快照发送时调用 revealBullets 补发进入视野的子弹。
+ * 道具、障碍物不做过滤。
+ */
+public class InterestFilter {
+
+    // 坦克坐标为左上角，边长20
+    private static final double TANK_HALF_SIZE = 10;
+
+    private final String playerId;
+    private final double radius;
+    private final double outerRadius;
+    private final boolean lineOfSight;
+    private final SnapshotHistory history = new SnapshotHistory();
+
+    private Set<Integer> visiblePlayers = new HashSet<>();
+    private Set<Integer> visibleBullets = new HashSet<>();
+    private int sourceRosterVersion = -1;
+    private int rosterVersion;
+    // 子弹事件ID -> 创建事件数据，以及客户端是否已收到创建事件；飞出地图后移除
+    private final Map<String, TrackedBullet> trackedBullets = new HashMap<>();
+
+    public InterestFilter(String playerId, double radius, double hysteresis, boolean lineOfSight) {
+        this.playerId = playerId;
+        this.radius = radius;
+        this.outerRadius = radius > 0 ? radius + Math.max(0, hysteresis) : 0;
+        this.lineOfSight = lineOfSight;
+    }
+
+    /**
+     * 过滤快照并记入本会话的历史；同一tick重复调用时返回历史中的结果
+     */
+    public synchronized WorldSnapshot apply(WorldSnapshot snapshot) {
+        WorldSnapshot previous = history.get(snapshot.getTick());
+        if (previous != null) {
+            return previous;
+        }
+
+        WorldSnapshot.PlayerView self = snapshot.getPlayers().get(playerId);
+        Map<String, WorldSnapshot.PlayerView> players = new LinkedHashMap<>();
+        List<WorldSnapshot.BulletView> bullets = new ArrayList<>();
+        Set<Integer> nextPlayers = new HashSet<>();
+        Set<Integer> nextBullets = new HashSet<>();
+
+        // 尚未出生时没有视野中心，不下发任何玩家和子弹
+        if (self != null) {
+            double cx = self.getX();
+            double cy = self.getY();
+            Consumer<WorldSnapshot.PlayerView> playerCheck = player -> {
+                if (player == self || isVisible(snapshot, cx, cy, player.getX(), player.getY(),
+                        TANK_HALF_SIZE, visiblePlayers.contains(player.getHandle()))) {
+                    players.put(player.getId(), player);
+                    nextPlayers.add(player.getHandle());
+                }
+            };
+            if (outerRadius > 0) {
+                snapshot.queryPlayers(cx, cy, outerRadius, playerCheck);
+            } else {
+                snapshot.getPlayers().values().forEach(playerCheck);
+            }
+            if (snapshot.getBullets() != null) {
+                Consumer<WorldSnapshot.BulletView> bulletCheck = bullet -> {
+                    if (playerId.equals(bullet.getPlayerId()) || isVisible(snapshot, cx, cy, bullet.getX(),
+                            bullet.getY(), 0, visibleBullets.contains(bullet.getHandle()))) {
+                        bullets.add(bullet);
+                        nextBullets.add(bullet.getHandle());
+                    }
+                };
+                if (outerRadius > 0) {
+                    snapshot.queryBullets(cx, cy, outerRadius, bulletCheck);
+                } else {
+                    snapshot.getBullets().forEach(bulletCheck);
+                }
+            }
+        }
+
+        if (!nextPlayers.equals(visiblePlayers) || snapshot.getRosterVersion() != sourceRosterVersion) {
+            rosterVersion++;
+        }
+        visiblePlayers = nextPlayers;
+        visibleBullets = nextBullets;
+        sourceRosterVersion = snapshot.getRosterVersion();
+
+        WorldSnapshot filtered = new WorldSnapshot(snapshot.getTick(), rosterVersion, snapshot.getPowerUpsVersion(),
+                players, bullets, snapshot.getObstacles(), snapshot.getPowerUps(),
+                snapshot.getGameStartTime(), snapshot.getMapWidth(), snapshot.getMapHeight(), null);
+        history.add(filtered);
+        return filtered;
+    }
+
+    /**
+     * 过滤一帧的事件，snapshot 为产生这些事件的tick发布的快照；返回本会话应收到的事件，可能为空
+     */
+    @SuppressWarnings("unchecked")
+    public synchronized List<TankWarMessage> filterEvents(WorldSnapshot snapshot, List<TankWarMessage> events) {
+        WorldSnapshot.PlayerView self = snapshot.getPlayers().get(playerId);
+        List<TankWarMessage> result = new ArrayList<>(events.size());
+        for (TankWarMessage event : events) {
+            String type = event.getType();
+            if ("positionUpdate".equals(type)) {
+                if (playerId.equals(event.getPlayerId()) || canSeePlayer(snapshot, self, event.getPlayerId())) {
+                    result.add(event);
+                }
+            } else if ("bulletCreated".equals(type)) {
+                Map<String, Object> data = (Map<String, Object>) event.getData();
+                String id = String.valueOf(data.get("id"));
+                boolean known = playerId.equals(data.get("playerId")) || (self != null && isVisible(snapshot,
+                        self.getX(), self.getY(), number(data, "x"), number(data, "y"), 0, false));
+                trackedBullets.put(id, new TrackedBullet(data, known));
+                if (known) {
+                    result.add(event);
+                }
+            } else if ("bulletRemoved".equals(type)) {
+                TrackedBullet bullet = trackedBullets.remove(String.valueOf(((Map<String, Object>) event.getData()).get("id")));
+                if (bullet != null && bullet.known) {
+                    result.add(event);
+                }
+            } else {
+                result.add(event);
+            }
+        }
+        revealBullets(snapshot, self, result);
+        return result;
+    }
+
+    /**
+     * 只检查未下发的子弹是否进入视野，返回需补发的创建事件，可能为空；每次发送快照时调用
+     */
+    public synchronized List<TankWarMessage> revealBullets(WorldSnapshot snapshot) {
+        if (trackedBullets.isEmpty()) {
+            return List.of();
+        }
+        List<TankWarMessage> result = new ArrayList<>();
+        revealBullets(snapshot, snapshot.getPlayers().get(playerId), result);
+        return result;
+    }
+
+    /**
+     * 按创建事件外推未下发的子弹，进入视野时以当前位置和tick补发创建事件；飞出地图的子弹不再跟踪
+     */
+    private void revealBullets(WorldSnapshot snapshot, WorldSnapshot.PlayerView self, List<TankWarMessage> result) {
+        for (Iterator<Map.Entry<String, TrackedBullet>> it = trackedBullets.entrySet().iterator(); it.hasNext(); ) {
+            TrackedBullet bullet = it.next().getValue();
+            double elapsed = snapshot.getTick() - number(bullet.data, "tick");
+            double x = number(bullet.data, "x") + number(bullet.data, "vx") * elapsed;
+            double y = number(bullet.data, "y") + number(bullet.data, "vy") * elapsed;
+            if (x < 0 || x > snapshot.getMapWidth() || y < 0 || y > snapshot.getMapHeight()) {
+                it.remove();
+            } else if (!bullet.known && self != null
+                    && isVisible(snapshot, self.getX(), self.getY(), x, y, 0, false)) {
+                bullet.known = true;
+                Map<String, Object> spawn = new LinkedHashMap<>(bullet.data);
+                spawn.put("x", x);
+                spawn.put("y", y);
+                spawn.put("tick", snapshot.getTick());
+                result.add(new TankWarMessage("bulletCreated", spawn));
+            }
+        }
+    }
+
+    private boolean canSeePlayer(WorldSnapshot snapshot, WorldSnapshot.PlayerView self, String otherId) {
+        WorldSnapshot.PlayerView other = otherId != null ? snapshot.getPlayers().get(otherId) : null;
+        return self != null && other != null && isVisible(snapshot, self.getX(), self.getY(),
+                other.getX(), other.getY(), TANK_HALF_SIZE, visiblePlayers.contains(other.getHandle()));
+    }
+
+    private static double number(Map<String, Object> data, String key) {
+        Object value = data.get(key);
+        return value instanceof Number ? ((Number) value).doubleValue() : 0;
+    }
+
+    /**
+     * 获取本会话历史中指定tick的过滤结果，作为增量帧的基线
+     */
+    public WorldSnapshot baseline(long tick) {
+        return tick >= 0 ? history.get(tick) : null;
+    }
+
+    /**
+     * 距离判断使用坐标原点，视线判断从自己坦克中心指向目标中心，offset 为坐标原点到中心的偏移
+     */
+    private boolean isVisible(WorldSnapshot snapshot, double cx, double cy, double x, double y, double offset,
+                              boolean wasVisible) {
+        if (radius > 0) {
+            double dx = x - cx;
+            double dy = y - cy;
+            double limit = wasVisible ? outerRadius : radius;
+            if (dx * dx + dy * dy > limit * limit) {
+                return false;
+            }
+        }
+        return !lineOfSight || snapshot.canSee(cx + TANK_HALF_SIZE, cy + TANK_HALF_SIZE, x + offset, y + offset);
+    }
+
+    private static final class TrackedBullet {
+        private final Map<String, Object> data;
+        private boolean known;
+
+        private TrackedBullet(Map<String, Object> data, boolean known) {
+            this.data = data;
+            this.known = known;
+        }
+    }
+}
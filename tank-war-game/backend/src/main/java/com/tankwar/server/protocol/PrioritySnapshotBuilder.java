@@ -0,0 +1,314 @@
+package com.tankwar.server.protocol;
+
+import com.tankwar.server.engine.WorldSnapshot;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * 按字节预算构建单个会话的快照
+ *
+ * 相对基线没有变化的实体不占用预算；有变化的实体按优先级累加器排序后依次写入，直到预算用完。
+ * 每次构建时有变化的实体累加本次权重（距离越近、变化越大、越可能威胁自己，权重越高），被写入后清零，
+ * 因此被挤掉的实体优先级持续上升，最终一定会被发送。
+ * 未写入的实体沿用基线中的状态，增量编码时不产生数据；基线中没有的新实体则暂不出现。
+ * 自己的坦克和移除始终发送。预算按发送队列的实际消耗调整：队列积压时降到最近一次更新间隔内实际发出的字节数以下，
+ * 否则逐步增加。输出即客户端应用该帧后的状态，记入本会话的历史作为增量帧的基线。
+ */
+public class PrioritySnapshotBuilder {
+
+    // 编码后单条记录的估算字节数（varint按常见取值估算）
+    private static final int PLAYER_COST = 16;
+    private static final int BULLET_COST = 12;
+    private static final int ROSTER_ENTRY_COST = 4;
+    // 优先级权重
+    private static final double BASE_WEIGHT = 1;
+    private static final double DISTANCE_WEIGHT = 4;
+    private static final double DISTANCE_FALLOFF = 600;
+    private static final double MOVE_WEIGHT = 0.1;
+    private static final double STATE_WEIGHT = 3;
+    private static final double THREAT_WEIGHT = 3;
+    private static final double THREAT_RANGE = 400;
+    // 预算调整：积压时按实际发送量的比例收缩，空闲时每次增加上限的该比例
+    private static final double BACKOFF = 0.8;
+    private static final int GROWTH_DIVISOR = 16;
+    // 坦克坐标为左上角，边长20
+    private static final double TANK_HALF_SIZE = 10;
+    private static final int[] DIRECTION_X = {0, 1, 0, -1};
+    private static final int[] DIRECTION_Y = {-1, 0, 1, 0};
+
+    private final String playerId;
+    private final int minBudget;
+    private final int maxBudget;
+    private final SnapshotHistory history = new SnapshotHistory();
+    private final Map<Integer, Double> playerPriority = new HashMap<>();
+    private final Map<Integer, Double> bulletPriority = new HashMap<>();
+
+    private int budget;
+    private long lastBytesSent = -1;
+    private Set<Integer> outputPlayers = new HashSet<>();
+    private int sourceRosterVersion = -1;
+    private int rosterVersion;
+
+    // 统计数据
+    private volatile int lastBytes;
+    private volatile int starvedPlayers;
+    private volatile int starvedBullets;
+
+    public PrioritySnapshotBuilder(String playerId, int initialBudget, int minBudget, int maxBudget) {
+        this.playerId = playerId;
+        this.minBudget = minBudget;
+        this.maxBudget = Math.max(minBudget, maxBudget);
+        this.budget = Math.max(minBudget, Math.min(this.maxBudget, initialBudget));
+    }
+
+    /**
+     * 根据自上次构建以来实际发出的字节数和当前是否积压调整预算
+     */
+    public synchronized void adapt(long bytesSent, boolean backlogged) {
+        long drained = lastBytesSent < 0 ? budget : bytesSent - lastBytesSent;
+        lastBytesSent = bytesSent;
+        if (backlogged) {
+            budget = (int) Math.max(minBudget, Math.min(budget, drained) * BACKOFF);
+        } else {
+            budget = Math.min(maxBudget, budget + Math.max(1, maxBudget / GROWTH_DIVISOR));
+        }
+    }
+
+    /**
+     * 以客户端确认的 ack 快照为基线，在预算内构建本会话的快照；同一tick重复调用时返回历史中的结果
+     */
+    public synchronized WorldSnapshot build(WorldSnapshot source, long ack) {
+        WorldSnapshot previous = history.get(source.getTick());
+        if (previous != null) {
+            return previous;
+        }
+        WorldSnapshot baseline = baseline(ack);
+        WorldSnapshot.PlayerView self = source.getPlayers().get(playerId);
+        double cx = self != null ? self.getX() + TANK_HALF_SIZE : source.getMapWidth() / 2.0;
+        double cy = self != null ? self.getY() + TANK_HALF_SIZE : source.getMapHeight() / 2.0;
+
+        Map<Integer, WorldSnapshot.PlayerView> oldPlayers = new HashMap<>();
+        if (baseline != null) {
+            for (WorldSnapshot.PlayerView player : baseline.getPlayers().values()) {
+                oldPlayers.put(player.getHandle(), player);
+            }
+        }
+        Map<Integer, WorldSnapshot.BulletView> oldBullets = new HashMap<>();
+        if (baseline != null && baseline.getBullets() != null) {
+            for (WorldSnapshot.BulletView bullet : baseline.getBullets()) {
+                oldBullets.put(bullet.getHandle(), bullet);
+            }
+        }
+
+        // 收集有变化的实体并累加优先级，无变化的直接保留
+        int remaining = budget;
+        List<WorldSnapshot.PlayerView> changedPlayers = new ArrayList<>();
+        // 选中的实体：玩家记句柄，子弹记 -1 - 句柄
+        Set<Integer> selected = new HashSet<>();
+        Set<Integer> presentPlayers = new HashSet<>();
+        for (WorldSnapshot.PlayerView player : source.getPlayers().values()) {
+            presentPlayers.add(player.getHandle());
+            WorldSnapshot.PlayerView old = sameEntity(oldPlayers.get(player.getHandle()), player);
+            if (player == self) {
+                selected.add(player.getHandle());
+                remaining -= cost(player, old);
+            } else if (old == null || !SnapshotCodec.samePlayer(old, player)) {
+                playerPriority.merge(player.getHandle(), playerWeight(player, old, cx, cy), Double::sum);
+                changedPlayers.add(player);
+            } else {
+                selected.add(player.getHandle());
+            }
+        }
+        playerPriority.keySet().retainAll(presentPlayers);
+
+        List<WorldSnapshot.BulletView> changedBullets = new ArrayList<>();
+        Set<Integer> presentBullets = new HashSet<>();
+        if (source.getBullets() != null) {
+            for (WorldSnapshot.BulletView bullet : source.getBullets()) {
+                presentBullets.add(bullet.getHandle());
+                if (playerId.equals(bullet.getPlayerId())) {
+                    selected.add(-1 - bullet.getHandle());
+                    remaining -= BULLET_COST;
+                } else {
+                    bulletPriority.merge(bullet.getHandle(), bulletWeight(bullet, cx, cy), Double::sum);
+                    changedBullets.add(bullet);
+                }
+            }
+        }
+        bulletPriority.keySet().retainAll(presentBullets);
+
+        // 玩家和子弹统一按累加后的优先级从高到低写入，放不下的跳过，继续尝试更小的记录
+        List<Object> candidates = new ArrayList<>(changedPlayers.size() + changedBullets.size());
+        candidates.addAll(changedPlayers);
+        candidates.addAll(changedBullets);
+        candidates.sort((a, b) -> Double.compare(priorityOf(b), priorityOf(a)));
+        int starvedPlayerCount = 0;
+        int starvedBulletCount = 0;
+        for (Object candidate : candidates) {
+            if (candidate instanceof WorldSnapshot.PlayerView) {
+                WorldSnapshot.PlayerView player = (WorldSnapshot.PlayerView) candidate;
+                int cost = cost(player, sameEntity(oldPlayers.get(player.getHandle()), player));
+                if (cost <= remaining) {
+                    remaining -= cost;
+                    selected.add(player.getHandle());
+                    playerPriority.remove(player.getHandle());
+                } else {
+                    starvedPlayerCount++;
+                }
+            } else {
+                WorldSnapshot.BulletView bullet = (WorldSnapshot.BulletView) candidate;
+                if (BULLET_COST <= remaining) {
+                    remaining -= BULLET_COST;
+                    selected.add(-1 - bullet.getHandle());
+                    bulletPriority.remove(bullet.getHandle());
+                } else {
+                    starvedBulletCount++;
+                }
+            }
+        }
+
+        // 按原顺序输出：选中的用本帧状态，被挤掉的沿用基线状态，基线中也没有的暂不出现
+        Map<String, WorldSnapshot.PlayerView> players = new LinkedHashMap<>();
+        Set<Integer> nextPlayers = new HashSet<>();
+        for (WorldSnapshot.PlayerView player : source.getPlayers().values()) {
+            WorldSnapshot.PlayerView view = selected.contains(player.getHandle())
+                    ? player : sameEntity(oldPlayers.get(player.getHandle()), player);
+            if (view != null) {
+                players.put(view.getId(), view);
+                nextPlayers.add(view.getHandle());
+            }
+        }
+        List<WorldSnapshot.BulletView> bullets = null;
+        if (source.getBullets() != null) {
+            bullets = new ArrayList<>(source.getBullets().size());
+            for (WorldSnapshot.BulletView bullet : source.getBullets()) {
+                WorldSnapshot.BulletView view = selected.contains(-1 - bullet.getHandle())
+                        ? bullet : oldBullets.get(bullet.getHandle());
+                if (view != null) {
+                    bullets.add(view);
+                }
+            }
+        }
+
+        if (!nextPlayers.equals(outputPlayers) || source.getRosterVersion() != sourceRosterVersion) {
+            rosterVersion++;
+        }
+        outputPlayers = nextPlayers;
+        sourceRosterVersion = source.getRosterVersion();
+        lastBytes = budget - remaining;
+        starvedPlayers = starvedPlayerCount;
+        starvedBullets = starvedBulletCount;
+
+        WorldSnapshot built = new WorldSnapshot(source.getTick(), rosterVersion, source.getPowerUpsVersion(),
+                players, bullets, source.getObstacles(), source.getPowerUps(),
+                source.getGameStartTime(), source.getMapWidth(), source.getMapHeight(), null);
+        history.add(built);
+        return built;
+    }
+
+    /**
+     * 获取本会话历史中指定tick的构建结果，作为增量帧的基线
+     */
+    public WorldSnapshot baseline(long tick) {
+        return tick >= 0 ? history.get(tick) : null;
+    }
+
+    /**
+     * 获取预算统计
+     */
+    public Map<String, Object> getStats() {
+        Map<String, Object> stats = new LinkedHashMap<>();
+        synchronized (this) {
+            stats.put("budgetBytes", budget);
+        }
+        stats.put("lastFrameBytes", lastBytes);
+        stats.put("starvedPlayers", starvedPlayers);
+        stats.put("starvedBullets", starvedBullets);
+        return stats;
+    }
+
+    private double priorityOf(Object candidate) {
+        if (candidate instanceof WorldSnapshot.PlayerView) {
+            return playerPriority.getOrDefault(((WorldSnapshot.PlayerView) candidate).getHandle(), 0.0);
+        }
+        return bulletPriority.getOrDefault(((WorldSnapshot.BulletView) candidate).getHandle(), 0.0);
+    }
+
+    /**
+     * 玩家权重：距离、位移和状态变化，以及是否正朝向自己
+     */
+    private double playerWeight(WorldSnapshot.PlayerView player, WorldSnapshot.PlayerView old, double cx, double cy) {
+        double x = player.getX() + TANK_HALF_SIZE;
+        double y = player.getY() + TANK_HALF_SIZE;
+        double weight = BASE_WEIGHT + distanceWeight(x, y, cx, cy);
+        if (old == null) {
+            weight += STATE_WEIGHT;
+        } else {
+            weight += Math.min(STATE_WEIGHT, Math.hypot(player.getX() - old.getX(), player.getY() - old.getY()) * MOVE_WEIGHT);
+            if (old.isAlive() != player.isAlive() || old.getHealth() != player.getHealth()) {
+                weight += STATE_WEIGHT;
+            }
+        }
+        int direction = player.getDirection();
+        if (direction >= 0 && direction < DIRECTION_X.length
+                && isThreat(x, y, DIRECTION_X[direction], DIRECTION_Y[direction], cx, cy)) {
+            weight += THREAT_WEIGHT;
+        }
+        return weight;
+    }
+
+    /**
+     * 子弹权重：距离，以及是否正飞向自己
+     */
+    private double bulletWeight(WorldSnapshot.BulletView bullet, double cx, double cy) {
+        double weight = BASE_WEIGHT + distanceWeight(bullet.getX(), bullet.getY(), cx, cy);
+        if (isThreat(bullet.getX(), bullet.getY(), bullet.getVx(), bullet.getVy(), cx, cy)) {
+            weight += THREAT_WEIGHT;
+        }
+        return weight;
+    }
+
+    private static double distanceWeight(double x, double y, double cx, double cy) {
+        return DISTANCE_WEIGHT * Math.max(0, 1 - Math.hypot(x - cx, y - cy) / DISTANCE_FALLOFF);
+    }
+
+    /**
+     * 沿 (dx, dy) 方向前进能否在射程内经过自己坦克附近
+     */
+    private static boolean isThreat(double x, double y, double dx, double dy, double cx, double cy) {
+        double length = Math.hypot(dx, dy);
+        if (length == 0) {
+            return false;
+        }
+        double tx = cx - x;
+        double ty = cy - y;
+        double along = (tx * dx + ty * dy) / length;
+        if (along <= 0 || along > THREAT_RANGE) {
+            return false;
+        }
+        double across = Math.abs(tx * dy - ty * dx) / length;
+        return across <= TANK_HALF_SIZE * 2;
+    }
+
+    private static int cost(WorldSnapshot.PlayerView player, WorldSnapshot.PlayerView old) {
+        if (old == null) {
+            // 新玩家还需随名单下发ID、名称和颜色
+            return PLAYER_COST + ROSTER_ENTRY_COST + player.getId().length()
+                    + player.getName().length() * 3 + player.getColor().length();
+        }
+        return SnapshotCodec.samePlayer(old, player) ? 0 : PLAYER_COST;
+    }
+
+    /**
+     * 句柄会被复用，ID不同时视为基线中没有该玩家
+     */
+    private static WorldSnapshot.PlayerView sameEntity(WorldSnapshot.PlayerView old, WorldSnapshot.PlayerView player) {
+        return old != null && old.getId().equals(player.getId()) ? old : null;
+    }
+}
@@ -0,0 +1,486 @@
+package com.tankwar.server.protocol;
+
+import com.tankwar.server.engine.WorldSnapshot;
+
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * 二进制快照编解码
+ *
+ * 帧格式（整数均为varint，有符号数使用zigzag编码）：
+ * <pre>
+ * u8 帧类型(1) | u8 标志位 | tick | [DELTA] 基线tick | 地图宽 | 地图高
+ * [ROSTER]    名单版本 | 数量 | (句柄, 玩家ID, 名称, 颜色)*
+ * [POWER_UPS] 道具版本 | 数量 | (x, y, u8 类型, 半径)*
+ * 移除的玩家数量 | 句柄* | 玩家数量 | (句柄, x, y, u8 方向/存活/道具类型, 生命值, 最大生命值, 分数, 击杀, 死亡, 速度*10, 道具等级, 输入序号)*
+ * [!NO_BULLETS] 移除的子弹数量 | 句柄* | 子弹数量 | (句柄, 发射者句柄, x, y, vx, vy, 伤害)*
+ * </pre>
+ * 坐标和速度按 1/4 像素量化。
+ * 完整帧包含全部内容；增量帧以客户端确认过的快照为基线，玩家和子弹只包含新增、变化和移除的部分，
+ * 名单和道具整体按版本比较，与基线相同则省略。解码端按tick保存最近的状态作为基线。
+ * 障碍物不在快照中传输，由静态地图层（mapData）和受损/摧毁事件同步。
+ * 设置 NO_BULLETS 时省略子弹，客户端根据 bulletCreated/bulletRemoved 事件自行外推子弹轨迹。
+ * 与前端 snapshot-codec.js 保持一致。
+ */
+public final class SnapshotCodec {
+
+    public static final int FRAME_SNAPSHOT = 1;
+    public static final int FLAG_ROSTER = 1;
+    public static final int FLAG_POWER_UPS = 1 << 1;
+    public static final int FLAG_DELTA = 1 << 2;
+    public static final int FLAG_NO_BULLETS = 1 << 3;
+
+    // 解码端保留的基线数量，需覆盖服务端快照历史
+    public static final int BASELINE_HISTORY = 64;
+
+    private static final double POSITION_SCALE = 4.0;
+    private static final double SPEED_SCALE = 10.0;
+
+    // 字符串枚举映射表，未知值编码为下标0
+    private static final String[] POWER_UP_TYPES = {"none", "speed", "damage", "health", "shield"};
+    private static final String[] POWER_UP_COLORS = {"#FFFFFF", "#FF6B6B", "#4ECDC4", "#45B7D1", "#96CEB4"};
+
+    private SnapshotCodec() {
+    }
+
+    /**
+     * 编码快照，baseline 为空时生成完整帧，否则生成相对基线的增量帧
+     */
+    public static byte[] encode(WorldSnapshot snapshot, WorldSnapshot baseline) {
+        return encode(snapshot, baseline, true);
+    }
+
+    /**
+     * 编码快照，includeBullets 为 false 时省略子弹
+     */
+    public static byte[] encode(WorldSnapshot snapshot, WorldSnapshot baseline, boolean includeBullets) {
+        boolean delta = baseline != null;
+        boolean includeRoster = !delta || baseline.getRosterVersion() != snapshot.getRosterVersion();
+        boolean includePowerUps = !delta || baseline.getPowerUpsVersion() != snapshot.getPowerUpsVersion();
+
+        Writer out = new Writer(64 + snapshot.getPlayers().size() * 24
+                + (includeBullets ? snapshot.getBullets().size() * 12 : 0));
+        out.writeByte(FRAME_SNAPSHOT);
+        out.writeByte((includeRoster ? FLAG_ROSTER : 0)
+                | (includePowerUps ? FLAG_POWER_UPS : 0)
+                | (delta ? FLAG_DELTA : 0)
+                | (includeBullets ? 0 : FLAG_NO_BULLETS));
+        out.writeVarLong(snapshot.getTick());
+        if (delta) {
+            out.writeVarLong(baseline.getTick());
+        }
+        out.writeVarInt(snapshot.getMapWidth());
+        out.writeVarInt(snapshot.getMapHeight());
+
+        if (includeRoster) {
+            out.writeVarInt(snapshot.getRosterVersion());
+            out.writeVarInt(snapshot.getPlayers().size());
+            for (WorldSnapshot.PlayerView player : snapshot.getPlayers().values()) {
+                out.writeVarInt(player.getHandle());
+                out.writeString(player.getId());
+                out.writeString(player.getName());
+                out.writeString(player.getColor());
+            }
+        }
+
+        if (includePowerUps) {
+            out.writeVarInt(snapshot.getPowerUpsVersion());
+            out.writeVarInt(snapshot.getPowerUps().size());
+            for (WorldSnapshot.PowerUpView powerUp : snapshot.getPowerUps()) {
+                out.writeSignedVarInt(quantize(powerUp.getX()));
+                out.writeSignedVarInt(quantize(powerUp.getY()));
+                out.writeByte(indexOf(POWER_UP_TYPES, powerUp.getType()));
+                out.writeVarInt(powerUp.getRadius());
+            }
+        }
+
+        writePlayers(out, snapshot, baseline);
+        if (includeBullets) {
+            writeBullets(out, snapshot, baseline);
+        }
+        return out.toByteArray();
+    }
+
+    private static void writePlayers(Writer out, WorldSnapshot snapshot, WorldSnapshot baseline) {
+        Map<Integer, WorldSnapshot.PlayerView> previous = new HashMap<>();
+        if (baseline != null) {
+            for (WorldSnapshot.PlayerView player : baseline.getPlayers().values()) {
+                previous.put(player.getHandle(), player);
+            }
+        }
+
+        List<WorldSnapshot.PlayerView> changed = new ArrayList<>();
+        for (WorldSnapshot.PlayerView player : snapshot.getPlayers().values()) {
+            WorldSnapshot.PlayerView old = previous.remove(player.getHandle());
+            // 句柄会被复用，ID不同说明是新玩家
+            if (old == null || !old.getId().equals(player.getId()) || !samePlayer(old, player)) {
+                changed.add(player);
+            }
+        }
+
+        // 基线中剩余的即为已移除的玩家
+        out.writeVarInt(previous.size());
+        for (Integer handle : previous.keySet()) {
+            out.writeVarInt(handle);
+        }
+        out.writeVarInt(changed.size());
+        for (WorldSnapshot.PlayerView player : changed) {
+            out.writeVarInt(player.getHandle());
+            out.writeSignedVarInt(quantize(player.getX()));
+            out.writeSignedVarInt(quantize(player.getY()));
+            out.writeByte((player.getDirection() & 0x03)
+                    | (player.isAlive() ? 0x04 : 0)
+                    | (indexOf(POWER_UP_TYPES, player.getPowerUpType()) << 3));
+            out.writeSignedVarInt(player.getHealth());
+            out.writeVarInt(player.getMaxHealth());
+            out.writeSignedVarInt(player.getScore());
+            out.writeVarInt(player.getKills());
+            out.writeVarInt(player.getDeaths());
+            out.writeVarInt((int) Math.round(player.getSpeed() * SPEED_SCALE));
+            out.writeVarInt(player.getPowerUpLevel());
+            out.writeVarInt(player.getInputSeq());
+        }
+    }
+
+    private static void writeBullets(Writer out, WorldSnapshot snapshot, WorldSnapshot baseline) {
+        Map<Integer, WorldSnapshot.BulletView> previous = new HashMap<>();
+        if (baseline != null) {
+            for (WorldSnapshot.BulletView bullet : baseline.getBullets()) {
+                previous.put(bullet.getHandle(), bullet);
+            }
+        }
+
+        List<WorldSnapshot.BulletView> changed = new ArrayList<>();
+        for (WorldSnapshot.BulletView bullet : snapshot.getBullets()) {
+            WorldSnapshot.BulletView old = previous.remove(bullet.getHandle());
+            if (old == null || quantize(old.getX()) != quantize(bullet.getX())
+                    || quantize(old.getY()) != quantize(bullet.getY())) {
+                changed.add(bullet);
+            }
+        }
+
+        out.writeVarInt(previous.size());
+        for (Integer handle : previous.keySet()) {
+            out.writeVarInt(handle);
+        }
+        out.writeVarInt(changed.size());
+        for (WorldSnapshot.BulletView bullet : changed) {
+            out.writeVarInt(bullet.getHandle());
+            out.writeVarInt(bullet.getOwnerHandle());
+            out.writeSignedVarInt(quantize(bullet.getX()));
+            out.writeSignedVarInt(quantize(bullet.getY()));
+            out.writeSignedVarInt(quantize(bullet.getVx()));
+            out.writeSignedVarInt(quantize(bullet.getVy()));
+            out.writeVarInt(bullet.getDamage());
+        }
+    }
+
+    /**
+     * 比较玩家在线上可见的字段（量化后）是否相同
+     */
+    static boolean samePlayer(WorldSnapshot.PlayerView a, WorldSnapshot.PlayerView b) {
+        return quantize(a.getX()) == quantize(b.getX())
+                && quantize(a.getY()) == quantize(b.getY())
+                && a.getDirection() == b.getDirection()
+                && a.isAlive() == b.isAlive()
+                && a.getHealth() == b.getHealth()
+                && a.getMaxHealth() == b.getMaxHealth()
+                && a.getScore() == b.getScore()
+                && a.getKills() == b.getKills()
+                && a.getDeaths() == b.getDeaths()
+                && a.getSpeed() == b.getSpeed()
+                && a.getPowerUpLevel() == b.getPowerUpLevel()
+                && a.getInputSeq() == b.getInputSeq()
+                && a.getPowerUpType().equals(b.getPowerUpType());
+    }
+
+    private static int quantize(double value) {
+        return (int) Math.round(value * POSITION_SCALE);
+    }
+
+    private static double dequantize(int value) {
+        return value / POSITION_SCALE;
+    }
+
+    private static int indexOf(String[] table, String value) {
+        for (int i = 0; i < table.length; i++) {
+            if (table[i].equals(value)) {
+                return i;
+            }
+        }
+        return 0;
+    }
+
+    /**
+     * 解码器，按tick保存最近解码出的状态作为增量帧的基线，输出与JSON快照相同结构的Map。
+     * 每个连接使用独立实例，非线程安全。
+     */
+    public static final class Decoder {
+
+        private final DecodedState[] history = new DecodedState[BASELINE_HISTORY];
+
+        /**
+         * 解码一帧，增量帧的基线已不在本地时返回 null，调用方应请求完整帧
+         */
+        public Map<String, Object> decode(byte[] frame) {
+            Reader in = new Reader(frame);
+            int type = in.readByte();
+            if (type != FRAME_SNAPSHOT) {
+                throw new IllegalArgumentException("未知的帧类型: " + type);
+            }
+            int flags = in.readByte();
+            long tick = in.readVarLong();
+
+            DecodedState state;
+            if ((flags & FLAG_DELTA) != 0) {
+                long baselineTick = in.readVarLong();
+                DecodedState baseline = history[(int) (baselineTick % BASELINE_HISTORY)];
+                if (baseline == null || baseline.tick != baselineTick) {
+                    return null;
+                }
+                state = new DecodedState(tick, baseline);
+            } else {
+                state = new DecodedState(tick, null);
+            }
+            int mapWidth = in.readVarInt();
+            int mapHeight = in.readVarInt();
+
+            if ((flags & FLAG_ROSTER) != 0) {
+                in.readVarInt();
+                state.roster = new HashMap<>();
+                for (int i = 0, n = in.readVarInt(); i < n; i++) {
+                    int handle = in.readVarInt();
+                    state.roster.put(handle, new String[]{in.readString(), in.readString(), in.readString()});
+                }
+            }
+
+            if ((flags & FLAG_POWER_UPS) != 0) {
+                in.readVarInt();
+                List<Map<String, Object>> powerUps = new ArrayList<>();
+                for (int i = 0, n = in.readVarInt(); i < n; i++) {
+                    Map<String, Object> powerUp = new LinkedHashMap<>();
+                    powerUp.put("x", dequantize(in.readSignedVarInt()));
+                    powerUp.put("y", dequantize(in.readSignedVarInt()));
+                    int typeIndex = Math.min(in.readByte(), POWER_UP_TYPES.length - 1);
+                    powerUp.put("type", POWER_UP_TYPES[typeIndex]);
+                    powerUp.put("color", POWER_UP_COLORS[typeIndex]);
+                    powerUp.put("radius", in.readVarInt());
+                    powerUp.put("active", true);
+                    powerUps.add(powerUp);
+                }
+                state.powerUps = powerUps;
+            }
+
+            for (int i = 0, n = in.readVarInt(); i < n; i++) {
+                state.players.remove(in.readVarInt());
+            }
+            for (int i = 0, n = in.readVarInt(); i < n; i++) {
+                int handle = in.readVarInt();
+                Map<String, Object> player = new LinkedHashMap<>();
+                player.put("x", dequantize(in.readSignedVarInt()));
+                player.put("y", dequantize(in.readSignedVarInt()));
+                int bits = in.readByte();
+                player.put("direction", bits & 0x03);
+                player.put("alive", (bits & 0x04) != 0);
+                player.put("powerUpType", POWER_UP_TYPES[Math.min(bits >> 3, POWER_UP_TYPES.length - 1)]);
+                player.put("health", in.readSignedVarInt());
+                player.put("maxHealth", in.readVarInt());
+                player.put("score", in.readSignedVarInt());
+                player.put("kills", in.readVarInt());
+                player.put("deaths", in.readVarInt());
+                player.put("speed", in.readVarInt() / SPEED_SCALE);
+                player.put("powerUpLevel", in.readVarInt());
+                player.put("inputSeq", in.readVarInt());
+                state.players.put(handle, player);
+            }
+
+            if ((flags & FLAG_NO_BULLETS) != 0) {
+                state.bullets.clear();
+                state.bulletsOmitted = true;
+                history[(int) (tick % BASELINE_HISTORY)] = state;
+                return state.toMap(mapWidth, mapHeight);
+            }
+            for (int i = 0, n = in.readVarInt(); i < n; i++) {
+                state.bullets.remove(in.readVarInt());
+            }
+            for (int i = 0, n = in.readVarInt(); i < n; i++) {
+                int handle = in.readVarInt();
+                Map<String, Object> bullet = new LinkedHashMap<>();
+                bullet.put("id", String.valueOf(handle));
+                bullet.put("ownerHandle", in.readVarInt());
+                bullet.put("x", dequantize(in.readSignedVarInt()));
+                bullet.put("y", dequantize(in.readSignedVarInt()));
+                bullet.put("vx", dequantize(in.readSignedVarInt()));
+                bullet.put("vy", dequantize(in.readSignedVarInt()));
+                bullet.put("damage", in.readVarInt());
+                bullet.put("active", true);
+                state.bullets.put(handle, bullet);
+            }
+
+            history[(int) (tick % BASELINE_HISTORY)] = state;
+            return state.toMap(mapWidth, mapHeight);
+        }
+    }
+
+    /**
+     * 解码后的一帧状态，以句柄为键，可作为后续增量帧的基线
+     */
+    private static final class DecodedState {
+        private final long tick;
+        private Map<Integer, String[]> roster;
+        private List<Map<String, Object>> powerUps;
+        private final Map<Integer, Map<String, Object>> players;
+        private final Map<Integer, Map<String, Object>> bullets;
+        private boolean bulletsOmitted;
+
+        private DecodedState(long tick, DecodedState baseline) {
+            this.tick = tick;
+            if (baseline != null) {
+                roster = baseline.roster;
+                powerUps = baseline.powerUps;
+                players = new LinkedHashMap<>(baseline.players);
+                bullets = new LinkedHashMap<>(baseline.bullets);
+            } else {
+                roster = new HashMap<>();
+                powerUps = new ArrayList<>();
+                players = new LinkedHashMap<>();
+                bullets = new LinkedHashMap<>();
+            }
+        }
+
+        private Map<String, Object> toMap(int mapWidth, int mapHeight) {
+            Map<String, Object> result = new LinkedHashMap<>();
+            result.put("tick", tick);
+            result.put("mapWidth", mapWidth);
+            result.put("mapHeight", mapHeight);
+            result.put("powerUps", powerUps);
+
+            Map<String, Object> playerMap = new LinkedHashMap<>();
+            players.forEach((handle, fields) -> {
+                String[] identity = roster.getOrDefault(handle, new String[]{String.valueOf(handle), "", "#FFFFFF"});
+                Map<String, Object> player = new LinkedHashMap<>();
+                player.put("id", identity[0]);
+                player.put("name", identity[1]);
+                player.put("color", identity[2]);
+                player.putAll(fields);
+                playerMap.put(identity[0], player);
+            });
+            result.put("players", playerMap);
+
+            if (!bulletsOmitted) {
+                List<Map<String, Object>> bulletList = new ArrayList<>();
+                for (Map<String, Object> fields : bullets.values()) {
+                    Map<String, Object> bullet = new LinkedHashMap<>(fields);
+                    String[] owner = roster.get((Integer) bullet.remove("ownerHandle"));
+                    bullet.put("playerId", owner != null ? owner[0] : null);
+                    bulletList.add(bullet);
+                }
+                result.put("bullets", bulletList);
+            }
+            result.put("gameRunning", true);
+            return result;
+        }
+    }
+
+    /**
+     * 可增长的字节输出缓冲
+     */
+    private static final class Writer {
+        private byte[] buffer;
+        private int position;
+
+        private Writer(int capacity) {
+            buffer = new byte[capacity];
+        }
+
+        void writeByte(int value) {
+            ensure(1);
+            buffer[position++] = (byte) value;
+        }
+
+        void writeVarInt(int value) {
+            writeVarLong(value & 0xFFFFFFFFL);
+        }
+
+        void writeSignedVarInt(int value) {
+            writeVarInt((value << 1) ^ (value >> 31));
+        }
+
+        void writeVarLong(long value) {
+            ensure(10);
+            while ((value & ~0x7FL) != 0) {
+                buffer[position++] = (byte) ((value & 0x7F) | 0x80);
+                value >>>= 7;
+            }
+            buffer[position++] = (byte) value;
+        }
+
+        void writeString(String value) {
+            byte[] bytes = (value != null ? value : "").getBytes(StandardCharsets.UTF_8);
+            writeVarInt(bytes.length);
+            ensure(bytes.length);
+            System.arraycopy(bytes, 0, buffer, position, bytes.length);
+            position += bytes.length;
+        }
+
+        byte[] toByteArray() {
+            return Arrays.copyOf(buffer, position);
+        }
+
+        private void ensure(int extra) {
+            if (position + extra > buffer.length) {
+                buffer = Arrays.copyOf(buffer, Math.max(buffer.length * 2, position + extra));
+            }
+        }
+    }
+
+    /**
+     * 字节输入读取
+     */
+    private static final class Reader {
+        private final byte[] buffer;
+        private int position;
+
+        private Reader(byte[] buffer) {
+            this.buffer = buffer;
+        }
+
+        int readByte() {
+            return buffer[position++] & 0xFF;
+        }
+
+        int readVarInt() {
+            return (int) readVarLong();
+        }
+
+        int readSignedVarInt() {
+            int raw = readVarInt();
+            return (raw >>> 1) ^ -(raw & 1);
+        }
+
+        long readVarLong() {
+            long result = 0;
+            int shift = 0;
+            int b;
+            do {
+                b = readByte();
+                result |= (long) (b & 0x7F) << shift;
+                shift += 7;
+            } while ((b & 0x80) != 0);
+            return result;
+        }
+
+        String readString() {
+            int length = readVarInt();
+            String value = new String(buffer, position, length, StandardCharsets.UTF_8);
+            position += length;
+            return value;
+        }
+    }
+}
@@ -0,0 +1,29 @@
+package com.tankwar.server.protocol;
+
+import com.tankwar.server.engine.WorldSnapshot;
+
+/**
+ * 房间最近发送过的快照，按tick索引，作为增量帧的基线
+ *
+ * 环形缓冲区，tick取模定位槽位，被覆盖的旧快照视为丢失，客户端将收到完整帧。
+ */
+public class SnapshotHistory {
+
+    private final WorldSnapshot[] snapshots = new WorldSnapshot[SnapshotCodec.BASELINE_HISTORY];
+
+    public synchronized void add(WorldSnapshot snapshot) {
+        snapshots[slot(snapshot.getTick())] = snapshot;
+    }
+
+    /**
+     * 获取指定tick的快照，不在历史中时返回 null
+     */
+    public synchronized WorldSnapshot get(long tick) {
+        WorldSnapshot snapshot = snapshots[slot(tick)];
+        return snapshot != null && snapshot.getTick() == tick ? snapshot : null;
+    }
+
+    private static int slot(long tick) {
+        return (int) (tick % SnapshotCodec.BASELINE_HISTORY);
+    }
+}
@@ -1,38 +1,22 @@
 package com.tankwar.server.scheduler;
 
 import com.tankwar.server.handler.TankWarWebSocketHandler;
-import com.tankwar.server.service.GameService;
+import com.tankwar.server.service.RoomService;
 import org.springframework.scheduling.annotation.Scheduled;
 import org.springframework.stereotype.Component;
 
 /**
  * 游戏定时任务调度器
+ *
+ * 模拟与快照广播由 RoomService 的房间tick执行器按固定步长驱动，这里只负责低频的周期任务。
  */
 @Component
 public class GameScheduler {
 
-    private final GameService gameService;
-    private final TankWarWebSocketHandler webSocketHandler;
-
-    public GameScheduler(GameService gameService, TankWarWebSocketHandler webSocketHandler) {
-        this.gameService = gameService;
-        this.webSocketHandler = webSocketHandler;
-    }
-
-    /**
-     * 每50毫秒更新一次游戏状态
-     */
-    @Scheduled(fixedRate = 50)
-    public void updateGame() {
-        gameService.updateGame();
-    }
-
-    /**
-     * 每100毫秒广播一次游戏状态
-     */
-    @Scheduled(fixedRate = 100)
-    public void broadcastGameState() {
-        webSocketHandler.broadcastGameState();
+    public GameScheduler(RoomService roomService, TankWarWebSocketHandler webSocketHandler) {
+        // 执行器按快照频率回调，广播对应房间的游戏状态
+        roomService.setSnapshotListener(engine -> webSocketHandler.broadcastGameState(engine.getRoom().getId()));
+        roomService.setEventListener(webSocketHandler::broadcastEvents);
     }
 
     /**
@@ -1,9 +1,7 @@
 package com.tankwar.server.service;
 
 import com.tankwar.server.model.ChatMessage;
-import com.tankwar.server.model.Player;
 import com.tankwar.server.model.PlayerStats;
-import com.tankwar.server.repository.PlayerStatsRepository;
 import org.springframework.stereotype.Service;
 
 import java.time.LocalDateTime;
@@ -16,13 +14,14 @@ import java.util.concurrent.ConcurrentLinkedQueue;
 @Service
 public class ChatAndLeaderboardService {
 
-    private final PlayerStatsRepository playerStatsRepository;
     private final Queue<ChatMessage> globalChatHistory = new ConcurrentLinkedQueue<>();
     private final Map<String, Queue<ChatMessage>> roomChatHistory = new HashMap<>();
     private static final int MAX_CHAT_HISTORY = 100;
+    private static final int LEADERBOARD_SIZE = 10;
+    private final LeaderboardIndex leaderboardIndex;
 
-    public ChatAndLeaderboardService(PlayerStatsRepository playerStatsRepository) {
-        this.playerStatsRepository = playerStatsRepository;
+    public ChatAndLeaderboardService(LeaderboardIndex leaderboardIndex) {
+        this.leaderboardIndex = leaderboardIndex;
     }
 
     /**
@@ -84,67 +83,60 @@ public class ChatAndLeaderboardService {
         }
     }
 
-    /**
-     * 更新玩家统计数据
-     */
-    public void updatePlayerStats(Player player, boolean won, int playTime) {
-        PlayerStats stats = playerStatsRepository.findByPlayerName(player.getName());
-        
-        if (stats == null) {
-            stats = new PlayerStats(player.getName());
-        }
-        
-        stats.updateStats(player, won, playTime);
-        playerStatsRepository.save(stats);
-    }
-
     /**
      * 获取总积分排行榜
      */
     public List<PlayerStats> getScoreLeaderboard() {
-        return playerStatsRepository.findTop10ByTotalScore();
+        return leaderboardIndex.top("score", LEADERBOARD_SIZE);
     }
 
     /**
      * 获取击杀排行榜
      */
     public List<PlayerStats> getKillsLeaderboard() {
-        return playerStatsRepository.findTop10ByTotalKills();
+        return leaderboardIndex.top("kills", LEADERBOARD_SIZE);
     }
 
     /**
      * 获取胜率排行榜
      */
     public List<PlayerStats> getWinRateLeaderboard() {
-        return playerStatsRepository.findTop10ByWinRate();
+        return leaderboardIndex.top("winRate", LEADERBOARD_SIZE);
     }
 
     /**
      * 获取K/D比排行榜
      */
     public List<PlayerStats> getKillDeathRatioLeaderboard() {
-        return playerStatsRepository.findTop10ByKillDeathRatio();
+        return leaderboardIndex.top("killDeathRatio", LEADERBOARD_SIZE);
     }
 
     /**
      * 获取游戏场次排行榜
      */
     public List<PlayerStats> getGamesPlayedLeaderboard() {
-        return playerStatsRepository.findTop10ByGamesPlayed();
+        return leaderboardIndex.top("gamesPlayed", LEADERBOARD_SIZE);
     }
 
     /**
      * 获取总游戏时间排行榜
      */
     public List<PlayerStats> getPlayTimeLeaderboard() {
-        return playerStatsRepository.findTop10ByTotalPlayTime();
+        return leaderboardIndex.top("playTime", LEADERBOARD_SIZE);
     }
 
     /**
      * 获取玩家个人统计
      */
     public PlayerStats getPlayerStats(String playerName) {
-        return playerStatsRepository.findByPlayerName(playerName);
+        return leaderboardIndex.get(playerName);
+    }
+
+    /**
+     * 获取玩家在各排行榜上的名次
+     */
+    public Map<String, Object> getPlayerRanks(String playerName) {
+        return leaderboardIndex.ranks(playerName);
     }
 
     /**
@@ -0,0 +1,209 @@
+package com.tankwar.server.service;
+
+import com.tankwar.server.model.PlayerStats;
+import com.tankwar.server.repository.PlayerStatsRepository;
+import org.springframework.stereotype.Service;
+
+import javax.annotation.PostConstruct;
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.function.Predicate;
+
+/**
+ * 排行榜内存索引
+ *
+ * 启动时从数据库加载全部玩家统计，之后随分数更新增量维护，排行榜和个人统计查询不再访问数据库。
+ * 每个排行榜是一棵按该指标排序的顺序统计树，取前N名和查询名次都是 O(log n)；
+ * 胜率和K/D比用交叉相乘比较，不经过浮点除法。同分时按玩家名排序，保证名次稳定。
+ */
+@Service
+public class LeaderboardIndex {
+
+    private final PlayerStatsRepository playerStatsRepository;
+    // 玩家名 -> 统计，树中保存的是同一个对象，修改前必须先从树中移除
+    private final Map<String, Row> rows = new HashMap<>();
+    private final Map<String, Board> boards = new LinkedHashMap<>();
+
+    public LeaderboardIndex(PlayerStatsRepository playerStatsRepository) {
+        this.playerStatsRepository = playerStatsRepository;
+        addBoard("score", (a, b) -> Integer.compare(b.totalScore, a.totalScore), row -> true);
+        addBoard("kills", (a, b) -> Integer.compare(b.totalKills, a.totalKills), row -> true);
+        addBoard("winRate", (a, b) -> Long.compare((long) b.gamesWon * a.gamesPlayed, (long) a.gamesWon * b.gamesPlayed),
+                row -> row.gamesPlayed >= 5);
+        addBoard("killDeathRatio", (a, b) -> Long.compare((long) b.totalKills * a.totalDeaths, (long) a.totalKills * b.totalDeaths),
+                row -> row.totalDeaths > 0);
+        addBoard("gamesPlayed", (a, b) -> Integer.compare(b.gamesPlayed, a.gamesPlayed), row -> true);
+        addBoard("playTime", (a, b) -> Integer.compare(b.totalPlayTime, a.totalPlayTime), row -> true);
+    }
+
+    private void addBoard(String name, Comparator<Row> metric, Predicate<Row> eligible) {
+        boards.put(name, new Board(metric.thenComparing(row -> row.playerName), eligible));
+    }
+
+    /**
+     * 启动时加载全部玩家统计
+     */
+    @PostConstruct
+    public void load() {
+        long start = System.currentTimeMillis();
+        List<PlayerStats> all = playerStatsRepository.findAll();
+        synchronized (this) {
+            for (PlayerStats stats : all) {
+                put(stats);
+            }
+        }
+        System.out.println("排行榜索引加载完成: " + all.size() + " 名玩家，耗时 " + (System.currentTimeMillis() - start) + "ms");
+    }
+
+    /**
+     * 用完整的统计记录替换玩家的索引数据
+     */
+    public synchronized void put(PlayerStats stats) {
+        Row row = detach(stats.getPlayerName());
+        row.id = stats.getId();
+        row.totalScore = stats.getTotalScore();
+        row.totalKills = stats.getTotalKills();
+        row.totalDeaths = stats.getTotalDeaths();
+        row.gamesPlayed = stats.getGamesPlayed();
+        row.gamesWon = stats.getGamesWon();
+        row.totalPlayTime = stats.getTotalPlayTime();
+        row.lastPlayTime = stats.getLastPlayTime();
+        row.firstPlayTime = stats.getFirstPlayTime();
+        attach(row);
+    }
+
+    /**
+     * 更新玩家的总分、击杀和死亡数，与分数写入器写入数据库的字段一致；各项只增不减，较小的旧值被忽略
+     */
+    public synchronized void updateTotals(String playerName, int score, int kills, int deaths, LocalDateTime time) {
+        Row row = detach(playerName);
+        row.totalScore = Math.max(row.totalScore, score);
+        row.totalKills = Math.max(row.totalKills, kills);
+        row.totalDeaths = Math.max(row.totalDeaths, deaths);
+        if (time.isAfter(row.lastPlayTime)) {
+            row.lastPlayTime = time;
+        }
+        attach(row);
+    }
+
+    /**
+     * 玩家统计的副本，没有记录时返回 null
+     */
+    public synchronized PlayerStats get(String playerName) {
+        Row row = rows.get(playerName);
+        return row != null ? row.toStats() : null;
+    }
+
+    /**
+     * 排行榜前 limit 名，排行榜不存在时返回空列表
+     */
+    public synchronized List<PlayerStats> top(String boardName, int limit) {
+        Board board = boards.get(boardName);
+        List<PlayerStats> result = new ArrayList<>();
+        if (board != null) {
+            for (Row row : board.tree.first(limit)) {
+                result.add(row.toStats());
+            }
+        }
+        return result;
+    }
+
+    /**
+     * 玩家在各排行榜上从1开始的名次，不满足上榜条件的排行榜不包含在内
+     */
+    public synchronized Map<String, Object> ranks(String playerName) {
+        Map<String, Object> ranks = new LinkedHashMap<>();
+        Row row = rows.get(playerName);
+        if (row == null) {
+            return ranks;
+        }
+        for (Map.Entry<String, Board> entry : boards.entrySet()) {
+            Board board = entry.getValue();
+            if (board.eligible.test(row)) {
+                ranks.put(entry.getKey(), board.tree.rank(row) + 1);
+            }
+        }
+        return ranks;
+    }
+
+    public synchronized Map<String, Object> getStats() {
+        Map<String, Object> stats = new LinkedHashMap<>();
+        stats.put("players", rows.size());
+        for (Map.Entry<String, Board> entry : boards.entrySet()) {
+            stats.put(entry.getKey(), entry.getValue().tree.size());
+        }
+        return stats;
+    }
+
+    /**
+     * 取出玩家的记录并从所有排行榜移除，没有记录时新建
+     */
+    private Row detach(String playerName) {
+        Row row = rows.get(playerName);
+        if (row == null) {
+            row = new Row(playerName);
+            rows.put(playerName, row);
+            return row;
+        }
+        for (Board board : boards.values()) {
+            if (board.eligible.test(row)) {
+                board.tree.remove(row);
+            }
+        }
+        return row;
+    }
+
+    private void attach(Row row) {
+        for (Board board : boards.values()) {
+            if (board.eligible.test(row)) {
+                board.tree.insert(row);
+            }
+        }
+    }
+
+    private static final class Board {
+        private final RankingTree<Row> tree;
+        private final Predicate<Row> eligible;
+
+        private Board(Comparator<Row> order, Predicate<Row> eligible) {
+            this.tree = new RankingTree<>(order);
+            this.eligible = eligible;
+        }
+    }
+
+    private static final class Row {
+        private final String playerName;
+        private Long id;
+        private int totalScore;
+        private int totalKills;
+        private int totalDeaths;
+        private int gamesPlayed;
+        private int gamesWon;
+        private int totalPlayTime;
+        private LocalDateTime lastPlayTime = LocalDateTime.now();
+        private LocalDateTime firstPlayTime = lastPlayTime;
+
+        private Row(String playerName) {
+            this.playerName = playerName;
+        }
+
+        private PlayerStats toStats() {
+            PlayerStats stats = new PlayerStats(playerName);
+            stats.setId(id);
+            stats.setTotalScore(totalScore);
+            stats.setTotalKills(totalKills);
+            stats.setTotalDeaths(totalDeaths);
+            stats.setGamesPlayed(gamesPlayed);
+            stats.setGamesWon(gamesWon);
+            stats.setTotalPlayTime(totalPlayTime);
+            stats.setLastPlayTime(lastPlayTime);
+            stats.setFirstPlayTime(firstPlayTime);
+            return stats;
+        }
+    }
+}
@@ -190,8 +190,13 @@ public class MapAndPowerUpService {
 
     private void generateBases(List<Base> bases) {
         // 生成两个基地
-        bases.add(new Base("team1", "红队", 100, 100));
-        bases.add(new Base("team2", "蓝队", 700, 500));
+        addBase(bases, new Base("team1", "红队", 100, 100));
+        addBase(bases, new Base("team2", "蓝队", 700, 500));
+    }
+
+    private void addBase(List<Base> bases, Base base) {
+        base.setId(bases.size());
+        bases.add(base);
     }
 
     private void generatePowerUps(List<PowerUp> powerUps, int count) {
@@ -0,0 +1,203 @@
+package com.tankwar.server.service;
+
+import com.tankwar.server.model.Player;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.stereotype.Service;
+
+import javax.annotation.PreDestroy;
+import java.sql.Timestamp;
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.locks.LockSupport;
+
+/**
+ * 玩家分数延迟写入器
+ *
+ * 复活和离开时只在内存中记录玩家的最新总分并同步更新排行榜索引，同一玩家的多次更新合并为一条，调用方不等待数据库。
+ * 总分、击杀和死亡数只增不减，合并时逐项取最大值，索引和数据库也只接受更大的值，
+ * 先读取、后到达的旧快照不会覆盖新值。
+ * 后台线程按固定间隔，或待写入条数达到批量大小时，用多行 INSERT ... ON DUPLICATE KEY UPDATE 批量写入；
+ * 写入失败的条目合并回队列，下次重试。关闭时写入剩余的全部条目。
+ */
+@Service
+public class PlayerStatsWriter {
+
+    private static final String UPSERT_PREFIX = "INSERT INTO player_stats "
+            + "(player_name, total_score, total_kills, total_deaths, games_played, games_won, total_play_time, "
+            + "last_play_time, first_play_time) VALUES ";
+    private static final String UPSERT_ROW = "(?, ?, ?, ?, 0, 0, 0, ?, ?)";
+    private static final String UPSERT_SUFFIX = " ON DUPLICATE KEY UPDATE "
+            + "total_score = GREATEST(total_score, VALUES(total_score)), "
+            + "total_kills = GREATEST(total_kills, VALUES(total_kills)), "
+            + "total_deaths = GREATEST(total_deaths, VALUES(total_deaths)), "
+            + "last_play_time = GREATEST(last_play_time, VALUES(last_play_time))";
+
+    private final JdbcTemplate jdbcTemplate;
+    private final LeaderboardIndex leaderboardIndex;
+    private final long flushIntervalNanos;
+    private final int batchSize;
+    // 待写入的最新总分，按玩家名合并
+    private final ConcurrentHashMap<String, Totals> pending = new ConcurrentHashMap<>();
+    private final Object flushLock = new Object();
+    private volatile boolean running = true;
+    private volatile Thread thread;
+
+    // 统计，写入相关的只在 flushLock 内修改
+    private final AtomicLong enqueued = new AtomicLong();
+    private volatile long written;
+    private volatile long batches;
+    private volatile long failures;
+    private volatile long lastFlushMicros;
+
+    public PlayerStatsWriter(JdbcTemplate jdbcTemplate, LeaderboardIndex leaderboardIndex,
+                             @Value("${game.stats.flush-interval-ms:2000}") long flushIntervalMillis,
+                             @Value("${game.stats.batch-size:200}") int batchSize) {
+        this.jdbcTemplate = jdbcTemplate;
+        this.leaderboardIndex = leaderboardIndex;
+        this.flushIntervalNanos = Math.max(1, flushIntervalMillis) * 1_000_000L;
+        this.batchSize = Math.max(1, batchSize);
+        Thread writer = new Thread(this::run, "stats-writer");
+        writer.setDaemon(true);
+        this.thread = writer;
+        writer.start();
+    }
+
+    /**
+     * 记录玩家当前的总分，排行榜索引立即更新，数据库由后台线程写入
+     */
+    public void save(Player player) {
+        Totals totals = new Totals(player.getScore(), player.getKills(), player.getDeaths(), LocalDateTime.now());
+        leaderboardIndex.updateTotals(player.getName(), totals.score, totals.kills, totals.deaths, totals.time);
+        pending.merge(player.getName(), totals, Totals::max);
+        enqueued.incrementAndGet();
+        if (pending.size() >= batchSize) {
+            Thread writer = thread;
+            if (writer != null) {
+                LockSupport.unpark(writer);
+            }
+        }
+    }
+
+    private void run() {
+        while (running) {
+            LockSupport.parkNanos(flushIntervalNanos);
+            if (running) {
+                flush();
+            }
+        }
+    }
+
+    /**
+     * 取出当前全部待写入条目，按批量大小分批写入
+     */
+    public void flush() {
+        synchronized (flushLock) {
+            if (pending.isEmpty()) {
+                return;
+            }
+            long start = System.nanoTime();
+            List<String> names = new ArrayList<>(pending.keySet());
+            for (int from = 0; from < names.size(); from += batchSize) {
+                List<String> batchNames = new ArrayList<>();
+                List<Totals> batch = new ArrayList<>();
+                for (String name : names.subList(from, Math.min(names.size(), from + batchSize))) {
+                    Totals totals = pending.remove(name);
+                    if (totals != null) {
+                        batchNames.add(name);
+                        batch.add(totals);
+                    }
+                }
+                if (!batch.isEmpty()) {
+                    writeBatch(batchNames, batch);
+                }
+            }
+            lastFlushMicros = (System.nanoTime() - start) / 1000;
+        }
+    }
+
+    private void writeBatch(List<String> names, List<Totals> batch) {
+        StringBuilder sql = new StringBuilder(UPSERT_PREFIX);
+        Object[] args = new Object[batch.size() * 6];
+        int index = 0;
+        for (int i = 0; i < batch.size(); i++) {
+            Totals totals = batch.get(i);
+            Timestamp time = Timestamp.valueOf(totals.time);
+            sql.append(i == 0 ? UPSERT_ROW : ", " + UPSERT_ROW);
+            args[index++] = names.get(i);
+            args[index++] = totals.score;
+            args[index++] = totals.kills;
+            args[index++] = totals.deaths;
+            args[index++] = time;
+            args[index++] = time;
+        }
+        sql.append(UPSERT_SUFFIX);
+        try {
+            jdbcTemplate.update(sql.toString(), args);
+            written += batch.size();
+            batches++;
+        } catch (Exception e) {
+            failures++;
+            System.err.println("批量保存玩家分数失败（" + batch.size() + " 条，稍后重试）: " + e.getMessage());
+            // 合并回队列，期间已有的更新逐项取较大值
+            for (int i = 0; i < batch.size(); i++) {
+                pending.merge(names.get(i), batch.get(i), Totals::max);
+            }
+        }
+    }
+
+    public Map<String, Object> getStats() {
+        Map<String, Object> stats = new LinkedHashMap<>();
+        stats.put("pending", pending.size());
+        stats.put("enqueued", enqueued.get());
+        stats.put("written", written);
+        stats.put("batches", batches);
+        stats.put("failures", failures);
+        stats.put("lastFlushMicros", lastFlushMicros);
+        return stats;
+    }
+
+    /**
+     * 关闭时停止后台线程并写入剩余条目
+     */
+    @PreDestroy
+    public void shutdown() {
+        running = false;
+        Thread writer = thread;
+        thread = null;
+        if (writer != null) {
+            LockSupport.unpark(writer);
+            try {
+                writer.join(flushIntervalNanos / 1_000_000 + 5000);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+        }
+        flush();
+        System.out.println("玩家分数写入器已关闭，剩余未写入: " + pending.size());
+    }
+
+    private static final class Totals {
+        private final int score;
+        private final int kills;
+        private final int deaths;
+        private final LocalDateTime time;
+
+        private Totals(int score, int kills, int deaths, LocalDateTime time) {
+            this.score = score;
+            this.kills = kills;
+            this.deaths = deaths;
+            this.time = time;
+        }
+
+        private static Totals max(Totals a, Totals b) {
+            return new Totals(Math.max(a.score, b.score), Math.max(a.kills, b.kills), Math.max(a.deaths, b.deaths),
+                    a.time.isAfter(b.time) ? a.time : b.time);
+        }
+    }
+}
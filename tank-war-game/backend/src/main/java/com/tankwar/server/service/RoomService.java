@@ -1,11 +1,18 @@
 package com.tankwar.server.service;
 
+import com.tankwar.server.engine.RoomEngine;
+import com.tankwar.server.engine.RoomTickExecutor;
 import com.tankwar.server.model.GameRoom;
 import com.tankwar.server.model.Player;
+import com.tankwar.server.model.TankWarMessage;
+import org.springframework.beans.factory.annotation.Value;
 import org.springframework.stereotype.Service;
 
+import javax.annotation.PreDestroy;
 import java.util.*;
 import java.util.concurrent.ConcurrentHashMap;
+import java.util.function.BiConsumer;
+import java.util.function.Consumer;
 import java.util.stream.Collectors;
 
 /**
@@ -16,13 +23,52 @@ public class RoomService {
 
     private final ConcurrentHashMap<String, GameRoom> rooms = new ConcurrentHashMap<>();
     private final ConcurrentHashMap<String, String> playerToRoom = new ConcurrentHashMap<>();
+    private final ConcurrentHashMap<String, RoomEngine> engines = new ConcurrentHashMap<>();
+    private final RoomTickExecutor tickExecutor;
+    private final int tickRate;
+    private volatile Consumer<RoomEngine> snapshotListener = engine -> {};
+    private volatile BiConsumer<String, TankWarMessage> eventListener = (roomId, message) -> {};
+
+    public RoomService(@Value("${game.tick-rate:20}") int tickRate,
+                       @Value("${game.snapshot-rate:10}") int snapshotRate,
+                       @Value("${game.simulation-parallelism:0}") int parallelism,
+                       @Value("${game.room-cpu-budget-ms:100}") long roomCpuBudgetMillis,
+                       @Value("${game.idle.tick-rate:1}") int idleTickRate,
+                       @Value("${game.idle.after-ms:5000}") long idleAfterMillis) {
+        this.tickRate = tickRate;
+        // 并行度为0时按CPU核数创建工作线程，所有房间共用一个线程池
+        if (parallelism <= 0) {
+            parallelism = Runtime.getRuntime().availableProcessors();
+        }
+        this.tickExecutor = new RoomTickExecutor(parallelism, snapshotRate, roomCpuBudgetMillis,
+                idleTickRate, idleAfterMillis, engine -> snapshotListener.accept(engine));
+        tickExecutor.start();
+    }
+
+    /**
+     * 设置房间事件回调，参数为房间ID和事件消息
+     */
+    public void setEventListener(BiConsumer<String, TankWarMessage> eventListener) {
+        this.eventListener = eventListener;
+    }
+
+    /**
+     * 设置快照回调，由房间tick线程池按快照频率对每个房间调用，不同房间可能并发
+     */
+    public void setSnapshotListener(Consumer<RoomEngine> snapshotListener) {
+        this.snapshotListener = snapshotListener;
+    }
 
     /**
      * 创建新房间
      */
     public GameRoom createRoom(String roomName, int maxPlayers) {
         GameRoom room = new GameRoom(roomName, maxPlayers);
+        RoomEngine engine = new RoomEngine(room, tickRate);
+        engine.setEventListener(message -> eventListener.accept(room.getId(), message));
+        engines.put(room.getId(), engine);
         rooms.put(room.getId(), room);
+        tickExecutor.addRoom(engine);
         System.out.println("创建新房间: " + roomName + " (ID: " + room.getId() + ")");
         return room;
     }
@@ -32,8 +78,9 @@ public class RoomService {
      */
     public boolean joinRoom(String roomId, Player player) {
         GameRoom room = rooms.get(roomId);
-        if (room != null && room.canJoin()) {
-            if (room.addPlayer(player)) {
+        RoomEngine engine = engines.get(roomId);
+        if (room != null && engine != null && room.canJoin()) {
+            if (engine.addPlayer(player)) {
                 playerToRoom.put(player.getId(), roomId);
                 System.out.println("玩家 " + player.getName() + " 加入房间 " + room.getName());
                 return true;
@@ -45,20 +92,34 @@ public class RoomService {
     /**
      * 离开房间
      */
-    public void leaveRoom(String playerId) {
+    public Player leaveRoom(String playerId) {
         String roomId = playerToRoom.remove(playerId);
+        Player player = null;
         if (roomId != null) {
             GameRoom room = rooms.get(roomId);
+            RoomEngine engine = engines.get(roomId);
             if (room != null) {
-                room.removePlayer(playerId);
+                player = engine != null ? engine.removePlayer(playerId) : room.removePlayer(playerId);
                 
                 // 如果房间空了，删除房间
                 if (room.isEmpty()) {
-                    rooms.remove(roomId);
+                    removeRoom(roomId);
                     System.out.println("房间 " + room.getName() + " 已删除（无玩家）");
                 }
             }
         }
+        return player;
+    }
+
+    /**
+     * 删除房间并停止其模拟
+     */
+    private void removeRoom(String roomId) {
+        rooms.remove(roomId);
+        RoomEngine engine = engines.remove(roomId);
+        if (engine != null) {
+            tickExecutor.removeRoom(engine);
+        }
     }
 
     /**
@@ -107,6 +168,28 @@ public class RoomService {
         return roomId != null ? rooms.get(roomId) : null;
     }
 
+    /**
+     * 获取房间的模拟引擎
+     */
+    public RoomEngine getEngine(String roomId) {
+        return roomId != null ? engines.get(roomId) : null;
+    }
+
+    /**
+     * 获取玩家所在房间的模拟引擎
+     */
+    public RoomEngine getPlayerEngine(String playerId) {
+        String roomId = playerToRoom.get(playerId);
+        return getEngine(roomId);
+    }
+
+    /**
+     * 获取所有房间的模拟引擎
+     */
+    public Collection<RoomEngine> getEngines() {
+        return engines.values();
+    }
+
     /**
      * 获取房间内所有玩家
      */
@@ -140,7 +223,11 @@ public class RoomService {
      * 清理空房间
      */
     public void cleanupEmptyRooms() {
-        rooms.entrySet().removeIf(entry -> entry.getValue().isEmpty());
+        rooms.values().stream()
+                .filter(GameRoom::isEmpty)
+                .map(GameRoom::getId)
+                .collect(Collectors.toList())
+                .forEach(this::removeRoom);
     }
 
     /**
@@ -160,4 +247,19 @@ public class RoomService {
                 .filter(room -> "playing".equals(room.getStatus()))
                 .collect(Collectors.toList());
     }
+
+    /**
+     * 获取房间tick执行器的运行统计（线程池利用率、各房间tick耗时等）
+     */
+    public Map<String, Object> getSimulationStats() {
+        return tickExecutor.getStats();
+    }
+
+    /**
+     * 关闭时停止房间tick执行器
+     */
+    @PreDestroy
+    public void shutdown() {
+        tickExecutor.stop();
+    }
 }
@@ -0,0 +1,174 @@
+// 二进制快照解码器，与后端 SnapshotCodec 保持一致
+// 按tick保存最近解码的状态，增量帧在对应基线上应用；障碍物由 mapData 消息和受损/摧毁事件同步
+// 帧设置 NO_BULLETS 时不含子弹，返回的状态中没有 bullets 字段，子弹由事件外推
+class SnapshotDecoder {
+    constructor() {
+        this.history = new Array(SnapshotDecoder.BASELINE_HISTORY);
+        this.textDecoder = new TextDecoder();
+    }
+
+    // 解码一帧，增量帧的基线已不在本地时返回 null，调用方应请求完整帧
+    decode(buffer) {
+        const bytes = new Uint8Array(buffer);
+        let pos = 0;
+
+        const readByte = () => bytes[pos++];
+        const readVarInt = () => {
+            let result = 0;
+            let multiplier = 1;
+            let b;
+            do {
+                b = bytes[pos++];
+                result += (b & 0x7f) * multiplier;
+                multiplier *= 128;
+            } while (b & 0x80);
+            return result;
+        };
+        const readSigned = () => {
+            const raw = readVarInt();
+            return raw % 2 === 0 ? raw / 2 : -(raw + 1) / 2;
+        };
+        const readString = () => {
+            const length = readVarInt();
+            const value = this.textDecoder.decode(bytes.subarray(pos, pos + length));
+            pos += length;
+            return value;
+        };
+        const readPosition = () => readSigned() / SnapshotDecoder.POSITION_SCALE;
+
+        if (readByte() !== SnapshotDecoder.FRAME_SNAPSHOT) {
+            return null;
+        }
+        const flags = readByte();
+        const tick = readVarInt();
+
+        let baseline = null;
+        if (flags & SnapshotDecoder.FLAG_DELTA) {
+            const baselineTick = readVarInt();
+            baseline = this.history[baselineTick % SnapshotDecoder.BASELINE_HISTORY];
+            if (!baseline || baseline.tick !== baselineTick) {
+                return null;
+            }
+        }
+        const state = {
+            tick,
+            roster: baseline ? baseline.roster : new Map(),
+            powerUps: baseline ? baseline.powerUps : [],
+            players: new Map(baseline ? baseline.players : []),
+            bullets: new Map(baseline ? baseline.bullets : [])
+        };
+        const mapWidth = readVarInt();
+        const mapHeight = readVarInt();
+
+        if (flags & SnapshotDecoder.FLAG_ROSTER) {
+            readVarInt();
+            state.roster = new Map();
+            for (let i = 0, n = readVarInt(); i < n; i++) {
+                const handle = readVarInt();
+                state.roster.set(handle, { id: readString(), name: readString(), color: readString() });
+            }
+        }
+
+        if (flags & SnapshotDecoder.FLAG_POWER_UPS) {
+            readVarInt();
+            state.powerUps = [];
+            for (let i = 0, n = readVarInt(); i < n; i++) {
+                const x = readPosition();
+                const y = readPosition();
+                const typeIndex = readByte();
+                state.powerUps.push({
+                    x, y,
+                    type: SnapshotDecoder.POWER_UP_TYPES[typeIndex] || 'none',
+                    color: SnapshotDecoder.POWER_UP_COLORS[typeIndex] || '#FFFFFF',
+                    radius: readVarInt(),
+                    active: true
+                });
+            }
+        }
+
+        for (let i = 0, n = readVarInt(); i < n; i++) {
+            state.players.delete(readVarInt());
+        }
+        for (let i = 0, n = readVarInt(); i < n; i++) {
+            const handle = readVarInt();
+            const x = readPosition();
+            const y = readPosition();
+            const bits = readByte();
+            state.players.set(handle, {
+                x, y,
+                direction: bits & 0x03,
+                alive: (bits & 0x04) !== 0,
+                powerUpType: SnapshotDecoder.POWER_UP_TYPES[bits >> 3] || 'none',
+                health: readSigned(),
+                maxHealth: readVarInt(),
+                score: readSigned(),
+                kills: readVarInt(),
+                deaths: readVarInt(),
+                speed: readVarInt() / 10,
+                powerUpLevel: readVarInt(),
+                inputSeq: readVarInt()
+            });
+        }
+
+        if (flags & SnapshotDecoder.FLAG_NO_BULLETS) {
+            state.bullets = new Map();
+            state.bulletsOmitted = true;
+            this.history[tick % SnapshotDecoder.BASELINE_HISTORY] = state;
+            return SnapshotDecoder.toGameState(state, mapWidth, mapHeight);
+        }
+        for (let i = 0, n = readVarInt(); i < n; i++) {
+            state.bullets.delete(readVarInt());
+        }
+        for (let i = 0, n = readVarInt(); i < n; i++) {
+            const handle = readVarInt();
+            state.bullets.set(handle, {
+                id: String(handle),
+                ownerHandle: readVarInt(),
+                x: readPosition(),
+                y: readPosition(),
+                vx: readPosition(),
+                vy: readPosition(),
+                damage: readVarInt(),
+                active: true
+            });
+        }
+
+        this.history[tick % SnapshotDecoder.BASELINE_HISTORY] = state;
+        return SnapshotDecoder.toGameState(state, mapWidth, mapHeight);
+    }
+
+    // 转换为与JSON快照相同的结构
+    static toGameState(state, mapWidth, mapHeight) {
+        const players = {};
+        state.players.forEach((fields, handle) => {
+            const identity = state.roster.get(handle) || { id: String(handle), name: '', color: '#FFFFFF' };
+            players[identity.id] = Object.assign({ id: identity.id, name: identity.name, color: identity.color }, fields);
+        });
+        const gameState = {
+            tick: state.tick,
+            mapWidth,
+            mapHeight,
+            players,
+            powerUps: state.powerUps,
+            gameRunning: true
+        };
+        if (!state.bulletsOmitted) {
+            gameState.bullets = [];
+            state.bullets.forEach(bullet => {
+                const owner = state.roster.get(bullet.ownerHandle);
+                gameState.bullets.push(Object.assign({ playerId: owner ? owner.id : null }, bullet));
+            });
+        }
+        return gameState;
+    }
+}
+
+SnapshotDecoder.FRAME_SNAPSHOT = 1;
+SnapshotDecoder.FLAG_ROSTER = 1;
+SnapshotDecoder.FLAG_POWER_UPS = 2;
+SnapshotDecoder.FLAG_DELTA = 4;
+SnapshotDecoder.FLAG_NO_BULLETS = 8;
+SnapshotDecoder.BASELINE_HISTORY = 64;
+SnapshotDecoder.POSITION_SCALE = 4;
+SnapshotDecoder.POWER_UP_TYPES = ['none', 'speed', 'damage', 'health', 'shield'];
+SnapshotDecoder.POWER_UP_COLORS = ['#FFFFFF', '#FF6B6B', '#4ECDC4', '#45B7D1', '#96CEB4'];
@@ -0,0 +1,95 @@
+package com.tankwar.server.engine;
+
+import com.tankwar.server.model.GameRoom;
+import com.tankwar.server.model.Obstacle;
+import com.tankwar.server.model.Player;
+import org.junit.jupiter.api.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertNotNull;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+/**
+ * 房间命令队列测试：命令可由任意线程提交，只在模拟线程的tick中执行
+ */
+class RoomEngineCommandTest {
+
+    private static RoomEngine engine(int maxPlayers) {
+        GameRoom room = new GameRoom("test", maxPlayers);
+        room.setMapWidth(2000);
+        room.setMapHeight(2000);
+        // 预置一个角落里的障碍物，避免随机生成地图
+        room.getObstacles().add(new Obstacle(0, 0, 10, 10, "steel"));
+        return new RoomEngine(room, 30);
+    }
+
+    @Test
+    void commandsApplyOnlyOnTick() {
+        RoomEngine engine = engine(8);
+        Player player = new Player("alice", 0, 0);
+        assertTrue(engine.addPlayer(player));
+        assertTrue(engine.hasPendingCommands());
+        assertNull(engine.getSnapshot().getPlayers().get(player.getId()));
+
+        engine.tick();
+        WorldSnapshot.PlayerView spawned = engine.getSnapshot().getPlayers().get(player.getId());
+        assertNotNull(spawned);
+        assertFalse(engine.hasPendingCommands());
+
+        double x = spawned.getX() + 5;
+        engine.submit(new RoomCommand.Move(player.getId(), x, spawned.getY(), 1));
+        assertEquals(spawned.getX(), engine.getSnapshot().getPlayers().get(player.getId()).getX());
+        engine.tick();
+        assertEquals(x, engine.getSnapshot().getPlayers().get(player.getId()).getX());
+    }
+
+    @Test
+    void respawnIgnoredWhileAlive() {
+        RoomEngine engine = engine(8);
+        Player player = new Player("alice", 0, 0);
+        engine.addPlayer(player);
+        engine.tick();
+        WorldSnapshot.PlayerView spawned = engine.getSnapshot().getPlayers().get(player.getId());
+        player.setHealth(40);
+
+        engine.submit(new RoomCommand.Respawn(player.getId()));
+        engine.tick();
+        WorldSnapshot.PlayerView after = engine.getSnapshot().getPlayers().get(player.getId());
+        assertEquals(spawned.getX(), after.getX());
+        assertEquals(spawned.getY(), after.getY());
+        assertEquals(40, after.getHealth());
+    }
+
+    @Test
+    void concurrentSubmitsAreAllApplied() throws InterruptedException {
+        RoomEngine engine = engine(200);
+        AtomicInteger wakes = new AtomicInteger();
+        engine.setWakeListener(wakes::incrementAndGet);
+
+        List<Thread> threads = new ArrayList<>();
+        for (int t = 0; t < 4; t++) {
+            int thread = t;
+            threads.add(new Thread(() -> {
+                for (int i = 0; i < 25; i++) {
+                    engine.addPlayer(new Player("p" + thread + "-" + i, 0, 0));
+                }
+            }));
+        }
+        threads.forEach(Thread::start);
+        for (Thread thread : threads) {
+            thread.join();
+        }
+
+        assertEquals(100, wakes.get());
+        assertEquals(0, engine.getSnapshot().getPlayers().size());
+        engine.tick();
+        assertEquals(100, engine.getSnapshot().getPlayers().size());
+        assertFalse(engine.hasPendingCommands());
+    }
+}
@@ -0,0 +1,123 @@
+package com.tankwar.server.engine;
+
+import com.tankwar.server.model.Obstacle;
+import org.junit.jupiter.api.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNotNull;
+import static org.junit.jupiter.api.Assertions.assertNull;
+
+/**
+ * 出生点候选表测试
+ */
+class SpawnMapTest {
+
+    // 150x150 的地图在边距内有 3x3 个候选，左上角坐标为 50、70、90
+    private static final int SMALL_MAP = 150;
+
+    @Test
+    void tanksOccupyOverlappingCandidates() {
+        SpawnMap spawnMap = new SpawnMap(SMALL_MAP, SMALL_MAP, List.of());
+        assertEquals(9, spawnMap.getFreeCount());
+
+        // 与候选对齐的坦克只占一个候选，边界相接不算重叠
+        spawnMap.addTank(50, 50);
+        assertEquals(8, spawnMap.getFreeCount());
+        // 未对齐的坦克跨四个候选
+        spawnMap.addTank(60, 60);
+        assertEquals(5, spawnMap.getFreeCount());
+
+        spawnMap.moveTank(60, 60, 90, 90);
+        assertEquals(7, spawnMap.getFreeCount());
+        spawnMap.removeTank(90, 90);
+        spawnMap.removeTank(50, 50);
+        assertEquals(9, spawnMap.getFreeCount());
+    }
+
+    @Test
+    void obstaclesAndTanksAreCountedSeparately() {
+        Obstacle wall = new Obstacle(50, 50, 40, 40, "brick");
+        SpawnMap spawnMap = new SpawnMap(SMALL_MAP, SMALL_MAP, List.of(wall));
+        assertEquals(5, spawnMap.getFreeCount());
+
+        spawnMap.addTank(50, 50);
+        spawnMap.removeObstacle(wall);
+        assertEquals(8, spawnMap.getFreeCount());
+        spawnMap.removeTank(50, 50);
+        assertEquals(9, spawnMap.getFreeCount());
+    }
+
+    @Test
+    void pickReturnsNullWhenFull() {
+        SpawnMap spawnMap = new SpawnMap(SMALL_MAP, SMALL_MAP, List.of());
+        for (int i = 0; i < 9; i++) {
+            double[] spawn = spawnMap.pick();
+            assertNotNull(spawn);
+            spawnMap.addTank(spawn[0], spawn[1]);
+        }
+        assertEquals(0, spawnMap.getFreeCount());
+        assertNull(spawnMap.pick());
+    }
+
+    @Test
+    void freeCountMatchesBruteForceUnderRandomUpdates() {
+        int mapSize = 400;
+        Random random = new Random(7);
+        List<Obstacle> obstacles = new ArrayList<>();
+        for (int i = 0; i < 12; i++) {
+            obstacles.add(new Obstacle(random.nextInt(mapSize), random.nextInt(mapSize),
+                    10 + random.nextInt(50), 10 + random.nextInt(50), "brick"));
+        }
+        SpawnMap spawnMap = new SpawnMap(mapSize, mapSize, obstacles);
+        List<double[]> tanks = new ArrayList<>();
+
+        for (int step = 0; step < 500; step++) {
+            int action = random.nextInt(4);
+            if (action == 0 || tanks.isEmpty()) {
+                double[] tank = {random.nextDouble() * mapSize, random.nextDouble() * mapSize};
+                tanks.add(tank);
+                spawnMap.addTank(tank[0], tank[1]);
+            } else if (action == 1) {
+                double[] tank = tanks.remove(random.nextInt(tanks.size()));
+                spawnMap.removeTank(tank[0], tank[1]);
+            } else if (action == 2) {
+                double[] tank = tanks.get(random.nextInt(tanks.size()));
+                double x = tank[0] + random.nextInt(7) - 3;
+                double y = tank[1] + random.nextInt(7) - 3;
+                spawnMap.moveTank(tank[0], tank[1], x, y);
+                tank[0] = x;
+                tank[1] = y;
+            } else if (!obstacles.isEmpty()) {
+                spawnMap.removeObstacle(obstacles.remove(random.nextInt(obstacles.size())));
+            }
+            assertEquals(countFree(mapSize, obstacles, tanks), spawnMap.getFreeCount(), "step " + step);
+        }
+    }
+
+    private static int countFree(int mapSize, List<Obstacle> obstacles, List<double[]> tanks) {
+        int free = 0;
+        for (double y = 50; y <= mapSize - 50; y += 20) {
+            for (double x = 50; x <= mapSize - 50; x += 20) {
+                boolean blocked = false;
+                for (Obstacle obstacle : obstacles) {
+                    blocked |= overlaps(x, y, obstacle.getX(), obstacle.getY(), obstacle.getWidth(), obstacle.getHeight());
+                }
+                for (double[] tank : tanks) {
+                    blocked |= overlaps(x, y, tank[0], tank[1], 20, 20);
+                }
+                if (!blocked) {
+                    free++;
+                }
+            }
+        }
+        return free;
+    }
+
+    private static boolean overlaps(double x, double y, double otherX, double otherY, double width, double height) {
+        return x < otherX + width && x + 20 > otherX && y < otherY + height && y + 20 > otherY;
+    }
+}
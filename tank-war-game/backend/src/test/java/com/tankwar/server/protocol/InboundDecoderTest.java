@@ -0,0 +1,101 @@
+package com.tankwar.server.protocol;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import org.junit.jupiter.api.Test;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+
+/**
+ * 入站消息流式解码测试
+ */
+class InboundDecoderTest {
+
+    private static final String MOVE = "{\"type\":\"move\",\"playerId\":\"p1\",\"data\":{\"x\":120.5,\"y\":80,\"direction\":2}}";
+
+    private final ObjectMapper objectMapper = new ObjectMapper();
+    private final InboundDecoder decoder = new InboundDecoder(objectMapper.getFactory());
+    private final InboundDecoder.Input input = new InboundDecoder.Input();
+
+    @Test
+    void decodesMove() {
+        assertEquals(InboundDecoder.Result.MOVE, decoder.decode(MOVE, input));
+        assertEquals(120.5, input.getX());
+        assertEquals(80.0, input.getY());
+        assertEquals(2, input.getDirection());
+    }
+
+    @Test
+    void decodesShootWithFieldsInAnyOrder() {
+        String payload = "{\"data\":{\"direction\":3,\"y\":40.25,\"x\":7,\"extra\":[1,{\"a\":2}]},\"type\":\"shoot\"}";
+        assertEquals(InboundDecoder.Result.SHOOT, decoder.decode(payload, input));
+        assertEquals(7.0, input.getX());
+        assertEquals(40.25, input.getY());
+        assertEquals(3, input.getDirection());
+    }
+
+    @Test
+    void decodesInput() {
+        assertEquals(InboundDecoder.Result.INPUT, decoder.decode("{\"type\":\"input\",\"data\":{\"seq\":42,\"keys\":5}}", input));
+        assertEquals(42, input.getSequence());
+        assertEquals(5, input.getKeys());
+    }
+
+    @Test
+    void decodesAck() {
+        assertEquals(InboundDecoder.Result.ACK, decoder.decode("{\"type\":\"ack\",\"data\":12345678901}", input));
+        assertEquals(12345678901L, input.getTick());
+    }
+
+    @Test
+    void leavesOtherTypesToCaller() {
+        assertEquals(InboundDecoder.Result.OTHER, decoder.decode("{\"type\":\"join\",\"data\":{\"playerName\":\"a\"}}", input));
+        assertEquals(InboundDecoder.Result.OTHER, decoder.decode("{\"type\":\"chat\",\"data\":\"hi\"}", input));
+    }
+
+    @Test
+    void rejectsMalformed() {
+        String[] payloads = {
+                "",
+                "[]",
+                "{\"type\":\"move\"",
+                "{\"data\":{\"x\":1,\"y\":2,\"direction\":0}}",
+                "{\"type\":5,\"data\":{\"x\":1,\"y\":2,\"direction\":0}}",
+                "{\"type\":\"move\",\"data\":{\"x\":1,\"y\":2}}",
+                "{\"type\":\"move\",\"data\":{\"x\":\"1\",\"y\":2,\"direction\":0}}",
+                "{\"type\":\"move\",\"data\":{\"x\":1,\"y\":2,\"direction\":4}}",
+                "{\"type\":\"shoot\",\"data\":{\"x\":1,\"y\":2,\"direction\":-1}}",
+                "{\"type\":\"input\",\"data\":{\"seq\":1}}",
+                "{\"type\":\"input\",\"data\":{\"seq\":1,\"keys\":16}}",
+                "{\"type\":\"input\",\"data\":{\"seq\":-1,\"keys\":1}}",
+                "{\"type\":\"ack\",\"data\":\"12\"}",
+                "{\"type\":\"ack\"}",
+        };
+        for (String payload : payloads) {
+            assertEquals(InboundDecoder.Result.MALFORMED, decoder.decode(payload, input), payload);
+        }
+    }
+
+    @Test
+    void invalidDataBeforeTypeDoesNotRejectOtherTypes() {
+        String[] payloads = {
+                "{\"data\":{\"x\":\"left\",\"y\":2,\"direction\":0},\"type\":\"join\"}",
+                "{\"data\":{\"direction\":7,\"nested\":{\"a\":[1,2]}},\"type\":\"chat\"}",
+                "{\"data\":{\"keys\":99999999999,\"seq\":1},\"type\":\"join\"}",
+        };
+        for (String payload : payloads) {
+            assertEquals(InboundDecoder.Result.OTHER, decoder.decode(payload, input), payload);
+        }
+        assertEquals(InboundDecoder.Result.MALFORMED,
+                decoder.decode("{\"data\":{\"x\":\"left\",\"y\":2,\"direction\":0},\"type\":\"move\"}", input));
+        assertEquals(InboundDecoder.Result.MOVE,
+                decoder.decode("{\"data\":{\"x\":1,\"y\":2,\"direction\":0},\"type\":\"move\"}", input));
+    }
+
+    @Test
+    void resetsInputBetweenMessages() {
+        decoder.decode("{\"type\":\"input\",\"data\":{\"seq\":9,\"keys\":3}}", input);
+        decoder.decode(MOVE, input);
+        assertEquals(0, input.getSequence());
+        assertEquals(0, input.getKeys());
+    }
+}
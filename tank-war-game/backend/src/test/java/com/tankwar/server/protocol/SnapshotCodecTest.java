@@ -0,0 +1,152 @@
+package com.tankwar.server.protocol;
+
+import com.tankwar.server.engine.WorldSnapshot;
+import com.tankwar.server.model.Player;
+import org.junit.jupiter.api.Test;
+
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertNotNull;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+/**
+ * 二进制快照编解码往返测试
+ */
+class SnapshotCodecTest {
+
+    private final Player alice = player("alice", 100.3, 200.6);
+    private final Player bob = player("bob", 300, 400);
+    private final Player carol = player("carol", 50, 60);
+
+    private static Player player(String name, double x, double y) {
+        Player player = new Player(name, x, y);
+        player.setId(name + "-id");
+        return player;
+    }
+
+    private static WorldSnapshot snapshot(long tick, int rosterVersion, List<WorldSnapshot.PlayerView> players,
+                                          List<WorldSnapshot.BulletView> bullets) {
+        Map<String, WorldSnapshot.PlayerView> playerMap = new LinkedHashMap<>();
+        for (WorldSnapshot.PlayerView player : players) {
+            playerMap.put(player.getId(), player);
+        }
+        return new WorldSnapshot(tick, rosterVersion, 0, playerMap, bullets, new ArrayList<>(), new ArrayList<>(),
+                0, 800, 600, null);
+    }
+
+    @SuppressWarnings("unchecked")
+    private static Map<String, Object> player(Map<String, Object> decoded, String id) {
+        return ((Map<String, Map<String, Object>>) decoded.get("players")).get(id);
+    }
+
+    @SuppressWarnings("unchecked")
+    private static List<Map<String, Object>> bullets(Map<String, Object> decoded) {
+        return (List<Map<String, Object>>) decoded.get("bullets");
+    }
+
+    @Test
+    void fullFrameRoundTrip() {
+        alice.setDirection(2);
+        alice.setHealth(75);
+        alice.setScore(120);
+        alice.setKills(3);
+        WorldSnapshot snapshot = snapshot(7, 1,
+                List.of(new WorldSnapshot.PlayerView(0, alice, 9), new WorldSnapshot.PlayerView(1, bob, 0)),
+                List.of(new WorldSnapshot.BulletView(5, 0, alice.getId(), 110.1, 205, 0, 8, 25)));
+
+        Map<String, Object> decoded = new SnapshotCodec.Decoder().decode(SnapshotCodec.encode(snapshot, null));
+
+        assertEquals(7L, decoded.get("tick"));
+        assertEquals(800, decoded.get("mapWidth"));
+        Map<String, Object> a = player(decoded, alice.getId());
+        assertEquals("alice", a.get("name"));
+        assertEquals(alice.getColor(), a.get("color"));
+        // 坐标按 1/4 像素量化
+        assertEquals(100.25, a.get("x"));
+        assertEquals(200.5, a.get("y"));
+        assertEquals(2, a.get("direction"));
+        assertEquals(75, a.get("health"));
+        assertEquals(120, a.get("score"));
+        assertEquals(3, a.get("kills"));
+        assertEquals(9, a.get("inputSeq"));
+        assertEquals(3.0, a.get("speed"));
+        assertNotNull(player(decoded, bob.getId()));
+
+        List<Map<String, Object>> bullets = bullets(decoded);
+        assertEquals(1, bullets.size());
+        assertEquals("5", bullets.get(0).get("id"));
+        assertEquals(alice.getId(), bullets.get(0).get("playerId"));
+        assertEquals(110.0, bullets.get(0).get("x"));
+        assertEquals(8.0, bullets.get(0).get("vy"));
+        assertEquals(25, bullets.get(0).get("damage"));
+    }
+
+    @Test
+    void deltaAgainstAckedBaselineMatchesFullFrame() {
+        WorldSnapshot baseline = snapshot(10, 1,
+                List.of(new WorldSnapshot.PlayerView(0, alice, 0), new WorldSnapshot.PlayerView(1, bob, 0)),
+                List.of(new WorldSnapshot.BulletView(1, 0, alice.getId(), 10, 10, 4, 0, 20),
+                        new WorldSnapshot.BulletView(2, 1, bob.getId(), 30, 30, 0, 4, 20)));
+        alice.updatePosition(140, 200, 1);
+        WorldSnapshot current = snapshot(11, 2,
+                List.of(new WorldSnapshot.PlayerView(0, alice, 1), new WorldSnapshot.PlayerView(2, carol, 0)),
+                List.of(new WorldSnapshot.BulletView(2, 1, bob.getId(), 30, 30, 0, 4, 20),
+                        new WorldSnapshot.BulletView(3, 2, carol.getId(), 70, 80, -4, 0, 20)));
+
+        SnapshotCodec.Decoder decoder = new SnapshotCodec.Decoder();
+        assertNotNull(decoder.decode(SnapshotCodec.encode(baseline, null)));
+        byte[] delta = SnapshotCodec.encode(current, baseline);
+        byte[] full = SnapshotCodec.encode(current, null);
+        Map<String, Object> fromDelta = decoder.decode(delta);
+
+        assertEquals(new SnapshotCodec.Decoder().decode(full), fromDelta);
+        assertNull(player(fromDelta, bob.getId()));
+        assertEquals(140.0, player(fromDelta, alice.getId()).get("x"));
+        assertEquals(carol.getId(), bullets(fromDelta).get(1).get("playerId"));
+    }
+
+    @Test
+    void unchangedEntitiesAreCarriedFromBaseline() {
+        WorldSnapshot baseline = snapshot(20, 1,
+                List.of(new WorldSnapshot.PlayerView(0, alice, 0), new WorldSnapshot.PlayerView(1, bob, 0)),
+                List.of(new WorldSnapshot.BulletView(1, 0, alice.getId(), 10, 10, 4, 0, 20)));
+        WorldSnapshot current = snapshot(21, 1,
+                List.of(new WorldSnapshot.PlayerView(0, alice, 0), new WorldSnapshot.PlayerView(1, bob, 0)),
+                List.of(new WorldSnapshot.BulletView(1, 0, alice.getId(), 10, 10, 4, 0, 20)));
+
+        SnapshotCodec.Decoder decoder = new SnapshotCodec.Decoder();
+        decoder.decode(SnapshotCodec.encode(baseline, null));
+        byte[] delta = SnapshotCodec.encode(current, baseline);
+        Map<String, Object> decoded = decoder.decode(delta);
+
+        assertTrue(delta.length < SnapshotCodec.encode(current, null).length);
+        assertEquals(21L, decoded.get("tick"));
+        assertEquals("bob", player(decoded, bob.getId()).get("name"));
+        assertEquals(1, bullets(decoded).size());
+    }
+
+    @Test
+    void deltaWithUnknownBaselineReturnsNull() {
+        WorldSnapshot baseline = snapshot(30, 1, List.of(new WorldSnapshot.PlayerView(0, alice, 0)), List.of());
+        WorldSnapshot current = snapshot(31, 1, List.of(new WorldSnapshot.PlayerView(0, alice, 1)), List.of());
+
+        assertNull(new SnapshotCodec.Decoder().decode(SnapshotCodec.encode(current, baseline)));
+    }
+
+    @Test
+    void omitsBulletsWhenRequested() {
+        WorldSnapshot snapshot = snapshot(40, 1, List.of(new WorldSnapshot.PlayerView(0, alice, 0)),
+                List.of(new WorldSnapshot.BulletView(1, 0, alice.getId(), 10, 10, 4, 0, 20)));
+
+        Map<String, Object> decoded = new SnapshotCodec.Decoder().decode(SnapshotCodec.encode(snapshot, null, false));
+
+        assertFalse(decoded.containsKey("bullets"));
+        assertNotNull(player(decoded, alice.getId()));
+    }
+}
@@ -0,0 +1,96 @@
+package com.tankwar.server.service;
+
+import com.tankwar.server.model.PlayerStats;
+import org.junit.jupiter.api.Test;
+
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+/**
+ * 排行榜内存索引测试
+ */
+class LeaderboardIndexTest {
+
+    // 不调用 load()，不需要数据库
+    private final LeaderboardIndex index = new LeaderboardIndex(null);
+
+    private static PlayerStats stats(String name, int score, int kills, int deaths, int played, int won) {
+        PlayerStats stats = new PlayerStats(name);
+        stats.setTotalScore(score);
+        stats.setTotalKills(kills);
+        stats.setTotalDeaths(deaths);
+        stats.setGamesPlayed(played);
+        stats.setGamesWon(won);
+        return stats;
+    }
+
+    private static List<String> names(List<PlayerStats> rows) {
+        List<String> names = new ArrayList<>();
+        for (PlayerStats row : rows) {
+            names.add(row.getPlayerName());
+        }
+        return names;
+    }
+
+    @Test
+    void ordersBoardsAndBreaksTiesByName() {
+        index.put(stats("carol", 300, 5, 1, 1, 0));
+        index.put(stats("alice", 500, 5, 2, 1, 0));
+        index.put(stats("bob", 300, 9, 3, 1, 0));
+
+        assertEquals(List.of("alice", "bob", "carol"), names(index.top("score", 10)));
+        assertEquals(List.of("bob", "alice"), names(index.top("kills", 2)));
+        // K/D：carol 5/1，bob 3，alice 2.5
+        assertEquals(List.of("carol", "bob", "alice"), names(index.top("killDeathRatio", 10)));
+        assertEquals(Integer.valueOf(3), index.ranks("carol").get("score"));
+        assertTrue(index.top("unknown", 10).isEmpty());
+    }
+
+    @Test
+    void winRateBoardRequiresFiveGames() {
+        index.put(stats("alice", 0, 0, 0, 4, 4));
+        assertFalse(index.ranks("alice").containsKey("winRate"));
+        assertTrue(index.top("winRate", 10).isEmpty());
+
+        index.put(stats("alice", 0, 0, 0, 5, 4));
+        index.put(stats("bob", 0, 0, 0, 10, 9));
+        assertEquals(List.of("bob", "alice"), names(index.top("winRate", 10)));
+        assertEquals(Integer.valueOf(2), index.ranks("alice").get("winRate"));
+    }
+
+    @Test
+    void killDeathBoardRequiresDeathsAndTracksTotals() {
+        LocalDateTime now = LocalDateTime.now();
+        index.updateTotals("alice", 100, 4, 0, now);
+        assertFalse(index.ranks("alice").containsKey("killDeathRatio"));
+
+        index.updateTotals("alice", 120, 4, 1, now);
+        Map<String, Object> ranks = index.ranks("alice");
+        assertEquals(Integer.valueOf(1), ranks.get("killDeathRatio"));
+        assertEquals(1, index.getStats().get("killDeathRatio"));
+
+        index.put(stats("alice", 120, 4, 0, 1, 0));
+        assertFalse(index.ranks("alice").containsKey("killDeathRatio"));
+        assertEquals(0, index.getStats().get("killDeathRatio"));
+    }
+
+    @Test
+    void updateTotalsIgnoresOlderSnapshots() {
+        LocalDateTime now = LocalDateTime.now();
+        index.updateTotals("alice", 200, 8, 3, now);
+        index.updateTotals("alice", 150, 6, 2, now.minusSeconds(1));
+
+        PlayerStats stats = index.get("alice");
+        assertEquals(200, stats.getTotalScore());
+        assertEquals(8, stats.getTotalKills());
+        assertEquals(3, stats.getTotalDeaths());
+        assertNull(index.get("bob"));
+    }
+}
@@ -0,0 +1,68 @@
+package com.tankwar.server.service;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.List;
+import java.util.Random;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+
+/**
+ * 顺序统计树测试，与排序列表对照
+ */
+class RankingTreeTest {
+
+    private final RankingTree<Integer> tree = new RankingTree<>(Comparator.naturalOrder());
+
+    @Test
+    void ranksAndFirstAfterInserts() {
+        for (int value : new int[]{50, 10, 40, 30, 20}) {
+            tree.insert(value);
+        }
+        assertEquals(5, tree.size());
+        assertEquals(List.of(10, 20, 30), tree.first(3));
+        assertEquals(List.of(10, 20, 30, 40, 50), tree.first(10));
+        assertEquals(0, tree.rank(10));
+        assertEquals(2, tree.rank(30));
+        assertEquals(4, tree.rank(50));
+    }
+
+    @Test
+    void ranksAndFirstAfterRemoves() {
+        for (int value = 1; value <= 10; value++) {
+            tree.insert(value);
+        }
+        tree.remove(1);
+        tree.remove(5);
+        tree.remove(10);
+        assertEquals(7, tree.size());
+        assertEquals(List.of(2, 3, 4, 6), tree.first(4));
+        assertEquals(0, tree.rank(2));
+        assertEquals(3, tree.rank(6));
+        assertEquals(6, tree.rank(9));
+    }
+
+    @Test
+    void matchesSortedListUnderRandomUpdates() {
+        Random random = new Random(42);
+        List<Integer> expected = new ArrayList<>();
+        for (int i = 0; i < 2000; i++) {
+            int value = random.nextInt(500);
+            if (expected.contains(value)) {
+                tree.remove(value);
+                expected.remove(Integer.valueOf(value));
+            } else {
+                tree.insert(value);
+                expected.add(value);
+            }
+        }
+        expected.sort(Comparator.naturalOrder());
+        assertEquals(expected.size(), tree.size());
+        assertEquals(expected.subList(0, Math.min(20, expected.size())), tree.first(20));
+        for (int i = 0; i < expected.size(); i++) {
+            assertEquals(i, tree.rank(expected.get(i)));
+        }
+    }
+}
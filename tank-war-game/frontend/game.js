@@ -4,6 +4,8 @@ class TankWarGame {
         this.canvas = document.getElementById('gameCanvas');
         this.ctx = this.canvas.getContext('2d');
         this.socket = null;
+        this.snapshotDecoder = new SnapshotDecoder();
+        this.resetPredictionState();
         this.playerId = null;
         this.playerName = '';
         this.gameState = {
@@ -168,6 +170,9 @@ class TankWarGame {
 			const url = candidates[attemptIndex++];
 			console.log('尝试连接 WebSocket:', url);
 			this.socket = new WebSocket(url);
+			this.socket.binaryType = 'arraybuffer';
+			this.snapshotDecoder = new SnapshotDecoder();
+			this.resetPredictionState();
 
 			this.socket.onopen = () => {
 				console.log('连接到服务器成功:', url);
@@ -175,11 +180,21 @@ class TankWarGame {
 				this.reconnectAttempts = 0;
 				this.sendMessage({
 					type: 'join',
-					data: this.playerName
+					data: { playerName: this.playerName, protocol: 'binary', movement: 'input', bullets: 'events', mapId: this.loadCachedMap().mapId }
 				});
 			};
 
 			this.socket.onmessage = (event) => {
+				// 二进制帧为快照，其余消息仍为JSON
+				if (event.data instanceof ArrayBuffer) {
+					const state = this.snapshotDecoder.decode(event.data);
+					// 确认已应用的快照，服务端据此发送增量；基线丢失时请求完整帧
+					this.sendMessage({ type: 'ack', data: state ? state.tick : -1 });
+					if (state) {
+						this.updateGameState(state);
+					}
+					return;
+				}
 				const message = JSON.parse(event.data);
 				this.handleServerMessage(message);
 			};
@@ -233,12 +248,31 @@ class TankWarGame {
                 this.playerId = message.playerId;
                 this.startGame();
                 break;
+            case 'mapData':
+                this.handleMapData(message.data);
+                break;
+            case 'obstacleDamaged':
+                this.handleObstacleDamaged(message.data);
+                break;
+            case 'obstacleDestroyed':
+                this.handleObstacleDestroyed(message.data);
+                break;
             case 'playerDied':
                 this.handlePlayerDied(message);
                 break;
             case 'powerUpCollected':
                 this.handlePowerUpCollected(message);
                 break;
+            case 'bulletCreated':
+                this.handleBulletCreated(message.data);
+                break;
+            case 'bulletRemoved':
+                this.handleBulletRemoved(message.data);
+                break;
+            case 'events':
+                // 服务端每帧合并发送的事件
+                message.data.forEach(event => this.handleServerMessage(event));
+                break;
         }
     }
     
@@ -257,6 +291,51 @@ class TankWarGame {
         this.addChatMessage(`${message.playerName}: ${message.text}`);
     }
     
+    // 静态地图层：几何数据按地图ID缓存在本地，之后只接收受损和摧毁事件
+    handleMapData(data) {
+        if (data.tickRate) {
+            this.tickRate = data.tickRate;
+        }
+        let geometry = data.map ? data.map.obstacles : null;
+        if (geometry) {
+            try {
+                localStorage.setItem('tankwar.map', JSON.stringify({ mapId: data.mapId, obstacles: geometry }));
+            } catch (e) {
+                console.warn('缓存地图失败:', e);
+            }
+        } else {
+            const cached = this.loadCachedMap();
+            geometry = cached.mapId === data.mapId ? cached.obstacles : [];
+        }
+        
+        const destroyed = new Set(data.destroyed || []);
+        this.gameState.obstacles = geometry
+            .map((obstacle, id) => Object.assign({}, obstacle, { id }))
+            .filter(obstacle => !destroyed.has(obstacle.id));
+        Object.entries(data.damaged || {}).forEach(([id, health]) => {
+            this.handleObstacleDamaged({ id: Number(id), health });
+        });
+    }
+    
+    loadCachedMap() {
+        try {
+            return JSON.parse(localStorage.getItem('tankwar.map')) || {};
+        } catch (e) {
+            return {};
+        }
+    }
+    
+    handleObstacleDamaged(data) {
+        const obstacle = this.gameState.obstacles.find(o => o.id === data.id);
+        if (obstacle) {
+            obstacle.health = data.health;
+        }
+    }
+    
+    handleObstacleDestroyed(data) {
+        this.gameState.obstacles = this.gameState.obstacles.filter(o => o.id !== data.id);
+    }
+    
     startGame() {
         this.showLoading(false);
         this.showStatus(`欢迎 ${this.playerName}！准备战斗吧！`, 'success');
@@ -285,10 +364,30 @@ class TankWarGame {
         if (data && data.obstacles) {
             this.gameState.obstacles = data.obstacles;
         }
+        if (data && data.tick !== undefined) {
+            this.serverTick = data.tick;
+            this.serverTickTime = performance.now();
+        }
+        this.reconcilePrediction();
         this.updatePlayerList();
         this.updateScoreBoard();
     }
     
+    // 校正本地预测：服务端已处理全部输入且已停止、坦克死亡或偏差过大时采用服务端位置，否则保留预测位置
+    reconcilePrediction() {
+        const me = this.gameState.players.get(this.playerId);
+        if (!me || !this.predicted) return;
+        const caughtUp = me.inputSeq >= this.inputSeq;
+        const drift = Math.hypot(me.x - this.predicted.x, me.y - this.predicted.y);
+        if (!me.alive || (caughtUp && !this.inputKeys) || drift > 40) {
+            this.predicted = null;
+            return;
+        }
+        me.x = this.predicted.x;
+        me.y = this.predicted.y;
+        me.direction = this.predicted.direction;
+    }
+    
     updatePlayerList() {
         const playerList = document.getElementById('playerList');
         playerList.innerHTML = '';
@@ -476,34 +575,49 @@ class TankWarGame {
     update() {
         if (!this.gameState.gameRunning) return;
         
+        this.updateBullets();
+        
         const player = this.gameState.players.get(this.playerId);
         if (!player) return;
         
-        let moved = false;
+        // 按键状态位掩码，第n位表示方向n（0:上, 1:右, 2:下, 3:左）
+        let keys = 0;
+        if (this.keys['w'] || this.keys['arrowup']) keys |= 1;
+        if (this.keys['d'] || this.keys['arrowright']) keys |= 2;
+        if (this.keys['s'] || this.keys['arrowdown']) keys |= 4;
+        if (this.keys['a'] || this.keys['arrowleft']) keys |= 8;
+        
+        // 只在按键变化时发送输入，移动由服务端按输入积分，快照中的 inputSeq 确认已处理的序号
+        if (keys !== this.inputKeys) {
+            this.inputKeys = keys;
+            this.sendMessage({ type: 'input', data: { seq: ++this.inputSeq, keys } });
+        }
+        
+        // 本地预测：按与服务端相同的规则推进自己的坦克，速度以每秒60帧为基准
+        const now = performance.now();
+        const frames = this.lastUpdateTime ? Math.min((now - this.lastUpdateTime) * 60 / 1000, 5) : 1;
+        this.lastUpdateTime = now;
+        if (!keys || !player.alive) return;
+        
+        const step = player.speed * frames;
         let newX = player.x;
         let newY = player.y;
         let newDirection = player.direction;
-        
-        // 处理移动 - 恢复原始速度，让坦克移动更快
-        if (this.keys['w'] || this.keys['arrowup']) {
-            newY = Math.max(20, player.y - player.speed); // 使用原始速度，让坦克移动更快
+        if (keys & 1) {
+            newY = Math.max(20, player.y - step);
             newDirection = 0;
-            moved = true;
         }
-        if (this.keys['s'] || this.keys['arrowdown']) {
-            newY = Math.min(this.canvas.height - 20, player.y + player.speed);
+        if (keys & 4) {
+            newY = Math.min(this.canvas.height - 20, player.y + step);
             newDirection = 2;
-            moved = true;
         }
-        if (this.keys['a'] || this.keys['arrowleft']) {
-            newX = Math.max(20, player.x - player.speed);
+        if (keys & 8) {
+            newX = Math.max(20, player.x - step);
             newDirection = 3;
-            moved = true;
         }
-        if (this.keys['d'] || this.keys['arrowright']) {
-            newX = Math.min(this.canvas.width - 20, player.x + player.speed);
+        if (keys & 2) {
+            newX = Math.min(this.canvas.width - 20, player.x + step);
             newDirection = 1;
-            moved = true;
         }
         
         // 检查碰撞
@@ -511,18 +625,46 @@ class TankWarGame {
             return;
         }
         
-        // 发送移动信息
-        if (moved) {
-            this.sendMessage({
-                type: 'move',
-                playerId: this.playerId,
-                data: {
-                    x: newX,
-                    y: newY,
-                    direction: newDirection
-                }
-            });
-        }
+        player.x = newX;
+        player.y = newY;
+        player.direction = newDirection;
+        this.predicted = { x: newX, y: newY, direction: newDirection };
+    }
+    
+    resetPredictionState() {
+        this.inputSeq = 0;
+        this.inputKeys = 0;
+        this.predicted = null;
+        this.lastUpdateTime = 0;
+        this.bulletTracks = new Map();
+        this.serverTick = 0;
+        this.serverTickTime = 0;
+        this.tickRate = 20;
+    }
+    
+    // 子弹由事件同步：按生成时的位置、速度和tick外推当前位置，飞出地图后丢弃
+    updateBullets() {
+        const tick = this.serverTick + (performance.now() - this.serverTickTime) * this.tickRate / 1000;
+        const bullets = [];
+        this.bulletTracks.forEach((track, id) => {
+            const elapsed = Math.max(0, tick - track.tick);
+            const x = track.x + track.vx * elapsed;
+            const y = track.y + track.vy * elapsed;
+            if (x < 0 || x > this.canvas.width || y < 0 || y > this.canvas.height) {
+                this.bulletTracks.delete(id);
+                return;
+            }
+            bullets.push({ id, playerId: track.playerId, x, y, vx: track.vx, vy: track.vy, damage: track.damage });
+        });
+        this.gameState.bullets = bullets;
+    }
+    
+    handleBulletCreated(data) {
+        this.bulletTracks.set(data.id, data);
+    }
+    
+    handleBulletRemoved(data) {
+        this.bulletTracks.delete(data.id);
     }
     
     checkCollision(x, y) {